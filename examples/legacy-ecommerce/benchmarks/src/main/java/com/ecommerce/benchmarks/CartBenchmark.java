@@ -0,0 +1,64 @@
+package com.ecommerce.benchmarks;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Decommerce.events.file=/dev/null")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CartBenchmark {
+    
+    @Param({"5", "50"})
+    public int cartLines;
+    
+    private Product[] products;
+    private Cart cart;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        List<Product> generated = Catalogs.generate(cartLines);
+        products = generated.toArray(new Product[0]);
+        cart = new Cart(1L, 1L);
+        for (int i = 0; i < products.length; i++) {
+            products[i].id = (long) i + 1;
+            cart.addItem(products[i], 1 + i % 3);
+        }
+    }
+    
+    @Benchmark
+    public double calculateTotal() {
+        return cart.calculateTotal();
+    }
+    
+    @Benchmark
+    public double getTotal() {
+        return cart.getTotal();
+    }
+    
+    @Benchmark
+    public int removeAndReAddItem() {
+        Product product = products[next];
+        next = (next + 1) % products.length;
+        cart.removeItem(product.id);
+        cart.addItem(product, 2);
+        return cart.getTotalItems();
+    }
+}
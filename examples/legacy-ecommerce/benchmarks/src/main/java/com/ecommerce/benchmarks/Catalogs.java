@@ -0,0 +1,57 @@
+package com.ecommerce.benchmarks;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic catalogs shared by the benchmarks.
+ */
+final class Catalogs {
+    
+    static final String[] CATEGORIES = {
+            "Electronics", "Furniture", "Books", "Garden", "Toys",
+            "Kitchen", "Sports", "Clothing", "Music", "Office"
+    };
+    
+    private static final String[] WORDS = {
+            "wireless", "ergonomic", "compact", "premium", "classic", "smart", "portable",
+            "mechanical", "organic", "vintage", "steel", "bamboo", "leather", "digital"
+    };
+    
+    private Catalogs() {
+    }
+    
+    static List<Product> generate(int size) {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product();
+            product.name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            product.description = "A " + WORDS[random.nextInt(WORDS.length)] + " item for everyday use";
+            product.price = 1 + random.nextInt(50_000) / 100.0;
+            product.setStock(1_000_000);
+            product.category = CATEGORIES[i % CATEGORIES.length];
+            product.setActive(true);
+            product.createdAt = new Date();
+            products.add(product);
+        }
+        return products;
+    }
+    
+    /**
+     * Saves a generated catalog into the repository and returns the saved
+     * products, ids assigned.
+     */
+    static List<Product> fill(ProductRepository repository, int size) {
+        List<Product> products = generate(size);
+        for (Product product : products) {
+            repository.save(product);
+        }
+        return products;
+    }
+}
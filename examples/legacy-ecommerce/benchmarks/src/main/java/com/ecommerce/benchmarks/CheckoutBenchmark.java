@@ -0,0 +1,91 @@
+package com.ecommerce.benchmarks;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.Order;
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full checkout: create a cart, add lines, place the order. Every cart
+ * contains the same hot SKU, so the threaded variants contend on its stock.
+ * Orders are kept by the service, hence the short iterations and larger heap.
+ * Run with the pipeline on by adding
+ * {@code -jvmArgsAppend -Decommerce.checkout.pipeline=true}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Decommerce.events.file=/dev/null", "-Xmx4g"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CheckoutBenchmark {
+    
+    @Param({"1000"})
+    public int catalogSize;
+    
+    @Param({"1", "5"})
+    public int cartLines;
+    
+    private OrderService service;
+    private Long hotSku;
+    private Long[] productIds;
+    
+    @Setup
+    public void setUp() {
+        ProductRepository repository = ProductRepository.getInstance();
+        List<Product> products = Catalogs.fill(repository, catalogSize);
+        productIds = new Long[products.size()];
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = products.get(i).id;
+        }
+        hotSku = productIds[0];
+        repository.addStock(hotSku, Integer.MAX_VALUE / 2);
+        service = OrderService.getInstance();
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public Order checkout() {
+        return placeOrder();
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public Order checkoutHotSku4Threads() {
+        return placeOrder();
+    }
+    
+    @Benchmark
+    @Threads(16)
+    public Order checkoutHotSku16Threads() {
+        return placeOrder();
+    }
+    
+    private Order placeOrder() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = 1 + random.nextInt(10_000);
+        Cart cart = service.createCart(userId);
+        service.addToCart(cart.id, hotSku, 1);
+        for (int i = 1; i < cartLines; i++) {
+            service.addToCart(cart.id, productIds[1 + random.nextInt(productIds.length - 1)], 1);
+        }
+        return service.createOrder(userId, cart.id, "1 Benchmark Street");
+    }
+}
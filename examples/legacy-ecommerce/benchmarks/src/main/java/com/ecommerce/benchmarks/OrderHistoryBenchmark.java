@@ -0,0 +1,75 @@
+package com.ecommerce.benchmarks;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.Order;
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Decommerce.events.file=/dev/null")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrderHistoryBenchmark {
+    
+    private static final long USER_ID = 42L;
+    
+    @Param({"10", "1000"})
+    public int ordersPerUser;
+    
+    @Param({"1000"})
+    public int otherUsers;
+    
+    private OrderService service;
+    private Date from;
+    private Date to;
+    
+    @Setup
+    public void setUp() {
+        Product product = Catalogs.fill(ProductRepository.getInstance(), 1).get(0);
+        service = OrderService.getInstance();
+        for (int i = 0; i < otherUsers; i++) {
+            place(1000L + i, product);
+        }
+        for (int i = 0; i < ordersPerUser; i++) {
+            Order order = place(USER_ID, product);
+            if (i == ordersPerUser / 2) {
+                from = order.orderDate;
+            }
+        }
+        to = new Date();
+    }
+    
+    private Order place(long userId, Product product) {
+        Cart cart = service.createCart(userId);
+        service.addToCart(cart.id, product.id, 1);
+        return service.createOrder(userId, cart.id, "1 Benchmark Street");
+    }
+    
+    @Benchmark
+    public List<Order> getOrdersByUser() {
+        return service.getOrdersByUser(USER_ID);
+    }
+    
+    @Benchmark
+    public List<Order> getOrdersByUserInRange() {
+        return service.getOrdersByUser(USER_ID, from, to);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ecommerce.benchmarks;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Decommerce.events.file=/dev/null")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProductRepositoryBenchmark {
+    
+    @Param({"1000", "100000"})
+    public int catalogSize;
+    
+    private ProductRepository repository;
+    private Long lastId;
+    
+    @Setup
+    public void setUp() {
+        repository = ProductRepository.getInstance();
+        List<Product> products = Catalogs.fill(repository, catalogSize);
+        lastId = products.get(products.size() - 1).id;
+    }
+    
+    @Benchmark
+    public List<Product> findByCategory() {
+        return repository.findByCategory("Books");
+    }
+    
+    @Benchmark
+    public int countByCategory() {
+        return repository.countByCategory("Books");
+    }
+    
+    @Benchmark
+    public List<Product> search() {
+        return repository.search("wireless ergonomic", 50);
+    }
+    
+    @Benchmark
+    public Product findById() {
+        return repository.findById(lastId);
+    }
+    
+    @Benchmark
+    public List<Product> findPage() {
+        return repository.findPage(lastId - catalogSize / 2, 100);
+    }
+    
+    @Benchmark
+    public List<Product> findByPriceRange() {
+        return repository.findByPriceRange(100, 110, 100);
+    }
+    
+    @Benchmark
+    public List<Product> findCheapestInCategory() {
+        return repository.findCheapest("Books", 10);
+    }
+}
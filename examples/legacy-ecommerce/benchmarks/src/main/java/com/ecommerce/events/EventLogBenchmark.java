@@ -0,0 +1,90 @@
+package com.ecommerce.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-path cost of an event against the System.out style println it
+ * replaced, both writing to /dev/null. Under DROP a saturated ring discards
+ * events, so the BLOCK rows show the cost bounded by the writer thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventLogBenchmark {
+    
+    @Param({"DROP", "BLOCK"})
+    public EventLog.OverflowPolicy policy;
+    
+    private EventLog log;
+    private PrintStream stdout;
+    
+    // one counter per benchmark thread, so the 4-thread rows do not contend on it
+    @State(Scope.Thread)
+    public static class Carts {
+        
+        long cartId;
+        
+        long next() {
+            return cartId++;
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        log = new EventLog(1 << 16, policy,
+                FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE));
+        stdout = new PrintStream(new BufferedOutputStream(new FileOutputStream("/dev/null"), 8192), true);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        log.awaitDrained(1000);
+        stdout.close();
+    }
+    
+    @Benchmark
+    public void emit(Carts carts) {
+        log.emit(EventType.CART_ITEM_ADDED, carts.next(), 7L);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void emit4Threads(Carts carts) {
+        log.emit(EventType.CART_ITEM_ADDED, carts.next(), 7L);
+    }
+    
+    @Benchmark
+    public void println(Carts carts) {
+        stdout.println("Added product " + 7L + " to cart " + carts.next());
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void println4Threads(Carts carts) {
+        stdout.println("Added product " + 7L + " to cart " + carts.next());
+    }
+}
@@ -0,0 +1,53 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side latency histogram and error count per endpoint.
+ */
+class EndpointStats {
+    
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    
+    void record(String endpoint, long latencyNanos, boolean ok) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, key -> new Endpoint());
+        stats.latency.record(latencyNanos);
+        if (!ok) {
+            stats.errors.increment();
+        }
+    }
+    
+    void print(PrintStream out, double seconds) {
+        out.printf("%-40s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            LatencyHistogram.Snapshot latency = entry.getValue().latency.snapshot();
+            out.printf("%-40s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(),
+                    latency.getCount(),
+                    entry.getValue().errors.sum(),
+                    latency.getCount() / seconds,
+                    millis(latency.percentile(0.5)),
+                    millis(latency.percentile(0.9)),
+                    millis(latency.percentile(0.99)),
+                    millis(latency.percentile(0.999)),
+                    millis(latency.max()));
+        }
+    }
+    
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+    
+    private static class Endpoint {
+        
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+}
@@ -0,0 +1,199 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.EcommerceApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the product and order APIs.
+ *
+ * Boots the application in this JVM on a random port (or targets
+ * {@code --base-url}), seeds a catalog over HTTP, then starts shopping
+ * sessions at a fixed arrival rate whether or not earlier ones have
+ * finished, and prints client-side throughput and latency percentiles per
+ * endpoint.
+ *
+ * <pre>
+ * mvn -f ../pom.xml install -DskipTests
+ * mvn compile exec:java@load -Dload.args="--rate=200 --duration=60 --items=3"
+ * </pre>
+ *
+ * Options: {@code --rate} sessions per second (50), {@code --duration} and
+ * {@code --warmup} in seconds (30, 5), {@code --items} per cart (3),
+ * {@code --think-ms} between steps (0), {@code --catalog} products to seed
+ * (1000), {@code --users} (10000), {@code --max-in-flight} sessions beyond
+ * which arrivals are counted as rejected (10000) and {@code --base-url}.
+ */
+public class LoadGenerator {
+    
+    static class Options {
+        
+        double rate = 50;
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        int itemsPerCart = 3;
+        long thinkMillis = 0;
+        int catalogSize = 1000;
+        int users = 10_000;
+        int maxInFlight = 10_000;
+        String baseUrl;
+        
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                int split = arg.indexOf('=');
+                values.put(arg.substring(2, split), arg.substring(split + 1));
+            }
+            Options options = new Options();
+            options.rate = Double.parseDouble(values.getOrDefault("rate", "" + options.rate));
+            options.durationSeconds = Integer.parseInt(values.getOrDefault("duration", "" + options.durationSeconds));
+            options.warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", "" + options.warmupSeconds));
+            options.itemsPerCart = Integer.parseInt(values.getOrDefault("items", "" + options.itemsPerCart));
+            options.thinkMillis = Long.parseLong(values.getOrDefault("think-ms", "" + options.thinkMillis));
+            options.catalogSize = Integer.parseInt(values.getOrDefault("catalog", "" + options.catalogSize));
+            options.users = Integer.parseInt(values.getOrDefault("users", "" + options.users));
+            options.maxInFlight = Integer.parseInt(values.getOrDefault("max-in-flight", "" + options.maxInFlight));
+            options.baseUrl = values.get("base-url");
+            return options;
+        }
+    }
+    
+    static class Catalog {
+        
+        final String[] categories = {"Electronics", "Furniture", "Books", "Garden", "Toys"};
+        final String[] searchTerms = {"wireless", "ergonomic", "compact", "premium", "classic", "desk"};
+        long[] productIds;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ConfigurableApplicationContext context = null;
+        if (options.baseUrl == null) {
+            if (System.getProperty("ecommerce.events.file") == null) {
+                System.setProperty("ecommerce.events.file", "target/loadtest-events.log");
+            }
+            context = SpringApplication.run(EcommerceApplication.class,
+                    "--server.port=0", "--spring.main.banner-mode=off", "--logging.level.com.ecommerce=INFO");
+            options.baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            Catalog catalog = seed(client, options);
+            run(client, options, catalog);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+    
+    private static Catalog seed(HttpClient client, Options options) throws IOException, InterruptedException {
+        Catalog catalog = new Catalog();
+        ObjectMapper json = new ObjectMapper();
+        catalog.productIds = new long[options.catalogSize];
+        for (int i = 0; i < options.catalogSize; i++) {
+            String body = "{\"name\":\"" + catalog.searchTerms[i % catalog.searchTerms.length] + " item " + i
+                    + "\",\"description\":\"Load test product " + i
+                    + "\",\"price\":" + (5 + i % 300)
+                    + ",\"stock\":1000000"
+                    + ",\"category\":\"" + catalog.categories[i % catalog.categories.length]
+                    + "\",\"active\":true}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(options.baseUrl + "/api/products"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException("Could not seed product: HTTP " + response.statusCode());
+            }
+            JsonNode product = json.readTree(response.body());
+            catalog.productIds[i] = product.get("id").asLong();
+        }
+        return catalog;
+    }
+    
+    private static void run(HttpClient client, Options options, Catalog catalog) {
+        EndpointStats stats = new EndpointStats();
+        // warmup sessions still running past the boundary record here and are never printed
+        EndpointStats warmupStats = new EndpointStats();
+        AtomicLong inFlight = new AtomicLong();
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long rejected = 0;
+        
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate);
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        boolean measuring = options.warmupSeconds == 0;
+        long measuredStarts = 0;
+        
+        System.out.printf("Target %.1f sessions/s against %s: %ds warmup, %ds measured%n",
+                options.rate, options.baseUrl, options.warmupSeconds, options.durationSeconds);
+        
+        for (long i = 0; ; i++) {
+            long due = start + i * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            if (!measuring && due >= warmupEnd) {
+                rejected = 0;
+                measuring = true;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (inFlight.get() >= options.maxInFlight) {
+                rejected++;
+                continue;
+            }
+            boolean measured = measuring;
+            if (measured) {
+                measuredStarts++;
+            }
+            inFlight.incrementAndGet();
+            new ShoppingSession(options, catalog, client, measured ? stats : warmupStats).run(due)
+                    .whenComplete((ignored, failure) -> {
+                        inFlight.decrementAndGet();
+                        if (!measured) {
+                            return;
+                        }
+                        if (failure == null) {
+                            completed.increment();
+                        } else {
+                            failed.increment();
+                        }
+                    });
+        }
+        
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        
+        double seconds = options.durationSeconds;
+        System.out.printf("Sessions: %d started (%.1f/s), %d completed, %d failed, %d rejected, %d unfinished%n",
+                measuredStarts, measuredStarts / seconds, completed.sum(), failed.sum(), rejected,
+                measuredStarts - completed.sum() - failed.sum());
+        stats.print(System.out, seconds);
+    }
+}
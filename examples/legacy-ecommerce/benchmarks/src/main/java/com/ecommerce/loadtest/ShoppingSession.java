@@ -0,0 +1,139 @@
+package com.ecommerce.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One shopper: browse a category, search, create a cart, add items, check
+ * out and look at the order. Steps run one after another without blocking a
+ * thread.
+ *
+ * Latency is measured from when a step was due, not from when it was sent:
+ * the first step is due at the session's scheduled arrival and each later
+ * step one think time after the previous response, so a generator or server
+ * that falls behind shows up in the numbers instead of being omitted.
+ */
+class ShoppingSession {
+    
+    private static final ObjectMapper JSON = new ObjectMapper();
+    
+    private final LoadGenerator.Options options;
+    private final LoadGenerator.Catalog catalog;
+    private final HttpClient client;
+    private final EndpointStats stats;
+    private final Executor thinkDelay;
+    private final long userId;
+    
+    ShoppingSession(LoadGenerator.Options options, LoadGenerator.Catalog catalog, HttpClient client,
+                    EndpointStats stats) {
+        this.options = options;
+        this.catalog = catalog;
+        this.client = client;
+        this.stats = stats;
+        this.thinkDelay = CompletableFuture.delayedExecutor(options.thinkMillis, TimeUnit.MILLISECONDS);
+        this.userId = 1 + ThreadLocalRandom.current().nextInt(options.users);
+    }
+    
+    CompletableFuture<Void> run(long dueNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String category = catalog.categories[random.nextInt(catalog.categories.length)];
+        String term = catalog.searchTerms[random.nextInt(catalog.searchTerms.length)];
+        
+        CompletableFuture<String> flow = call("GET /api/products/category/{category}",
+                get("/api/products/category/" + encode(category)), dueNanos)
+                .thenCompose(ignored -> next(() -> call("GET /api/products/search",
+                        get("/api/products/search?query=" + encode(term)), System.nanoTime())))
+                .thenCompose(ignored -> next(() -> call("POST /api/orders/cart",
+                        post("/api/orders/cart?userId=" + userId, null), System.nanoTime())));
+        
+        CompletableFuture<Long> cartId = flow.thenApply(cart -> parse(cart).get("id").asLong());
+        CompletableFuture<Long> filled = cartId;
+        for (int i = 0; i < options.itemsPerCart; i++) {
+            filled = filled.thenCompose(id -> next(() -> {
+                long productId = catalog.productIds[ThreadLocalRandom.current().nextInt(catalog.productIds.length)];
+                return call("POST /api/orders/cart/{cartId}/items",
+                        post("/api/orders/cart/" + id + "/items?productId=" + productId + "&quantity=1", null),
+                        System.nanoTime()).thenApply(ignored -> id);
+            }));
+        }
+        
+        return filled
+                .thenCompose(id -> next(() -> call("POST /api/orders",
+                        post("/api/orders", "{\"userId\":" + userId + ",\"cartId\":" + id
+                                + ",\"shippingAddress\":\"1 Load Test Street\"}"), System.nanoTime())))
+                .thenCompose(body -> {
+                    JsonNode order = parse(body);
+                    if (order == null || !order.hasNonNull("id")) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    long orderId = order.get("id").asLong();
+                    return next(() -> call("GET /api/orders/{orderId}", get("/api/orders/" + orderId),
+                            System.nanoTime()));
+                })
+                .thenApply(ignored -> null);
+    }
+    
+    private <T> CompletableFuture<T> next(Supplier<CompletableFuture<T>> step) {
+        if (options.thinkMillis <= 0) {
+            return step.get();
+        }
+        return CompletableFuture.supplyAsync(step, thinkDelay).thenCompose(future -> future);
+    }
+    
+    private CompletableFuture<String> call(String endpoint, HttpRequest request, long dueNanos) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, failure) -> {
+                    long latency = System.nanoTime() - dueNanos;
+                    boolean ok = failure == null && response.statusCode() < 400;
+                    stats.record(endpoint, latency, ok);
+                    if (!ok) {
+                        throw new IllegalStateException(endpoint + " failed: "
+                                + (failure != null ? failure : "HTTP " + response.statusCode()));
+                    }
+                    return response.body();
+                });
+    }
+    
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(options.baseUrl + path)).GET().build();
+    }
+    
+    private HttpRequest post(String path, String json) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(options.baseUrl + path));
+        if (json == null) {
+            return builder.POST(HttpRequest.BodyPublishers.noBody()).build();
+        }
+        return builder.header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+    
+    private static JsonNode parse(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+        try {
+            return JSON.readTree(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
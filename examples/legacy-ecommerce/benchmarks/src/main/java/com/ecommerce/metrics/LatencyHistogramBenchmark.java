@@ -0,0 +1,42 @@
+package com.ecommerce.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LatencyHistogramBenchmark {
+    
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long value = 12_345;
+    
+    @Benchmark
+    public void record() {
+        histogram.record(value++ & 0xFFFFF);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void record4Threads() {
+        histogram.record(value++ & 0xFFFFF);
+    }
+    
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
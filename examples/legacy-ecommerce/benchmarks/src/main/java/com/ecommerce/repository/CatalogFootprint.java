@@ -0,0 +1,135 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Compares the heap footprint and GC cost of the heap and columnar product
+ * stores. For each store it fills a catalog, reports the heap it retains
+ * per product, then times full collections and a burst of short-lived
+ * allocation with the catalog live.
+ *
+ * <pre>
+ * mvn compile exec:exec@footprint -Dfootprint.args="--products=2000000"
+ * </pre>
+ *
+ * Run with a heap large enough for the heap store ({@code footprint.heap},
+ * 4g by default) so both are measured under the same settings.
+ */
+public class CatalogFootprint {
+    
+    private static final String[] CATEGORIES = {
+            "Electronics", "Furniture", "Books", "Garden", "Toys",
+            "Kitchen", "Sports", "Clothing", "Music", "Office"
+    };
+    
+    private static volatile Object sink;
+    
+    public static void main(String[] args) {
+        int products = 1_000_000;
+        String[] storages = {"heap", "columnar"};
+        for (String arg : args) {
+            if (arg.startsWith("--products=")) {
+                products = Integer.parseInt(arg.substring("--products=".length()));
+            } else if (arg.startsWith("--storage=")) {
+                storages = arg.substring("--storage=".length()).split(",");
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        
+        System.out.printf("%-10s %12s %14s %14s %14s%n",
+                "storage", "products", "bytes/product", "full GC ms", "churn GC ms");
+        for (String storage : storages) {
+            measure(storage, products);
+        }
+    }
+    
+    private static void measure(String storage, int size) {
+        long baseline = usedAfterGc();
+        ProductStore store = create(storage);
+        fill(store, size);
+        long retained = usedAfterGc() - baseline;
+        
+        long before = gcMillis();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        double fullGc = (gcMillis() - before) / 3.0;
+        
+        before = gcMillis();
+        churn(store, size);
+        long churnGc = gcMillis() - before;
+        
+        System.out.printf("%-10s %12d %14.1f %14.1f %14d%n",
+                storage, size, (double) retained / size, fullGc, churnGc);
+        sink = store;
+        sink = null;
+    }
+    
+    private static ProductStore create(String storage) {
+        switch (storage) {
+            case "heap":
+                return new HeapProductStore();
+            case "columnar":
+                return new ColumnarProductStore();
+            default:
+                throw new IllegalArgumentException("Unknown storage " + storage);
+        }
+    }
+    
+    private static void fill(ProductStore store, int size) {
+        Random random = new Random(42);
+        for (int i = 1; i <= size; i++) {
+            Product product = new Product();
+            product.id = (long) i;
+            product.name = "Product " + i;
+            product.description = "Item " + Integer.toHexString(random.nextInt());
+            product.price = 1 + random.nextInt(50_000) / 100.0;
+            product.setStock(random.nextInt(1000));
+            product.category = CATEGORIES[i % CATEGORIES.length];
+            product.setActive(true);
+            product.status = "ACTIVE";
+            product.createdAt = new Date();
+            store.compute(product.id, (id, previous) -> product);
+        }
+    }
+    
+    /**
+     * Reads products at random for a while, which allocates views in the
+     * columnar store and garbage in both, so young collections run with the
+     * whole catalog live.
+     */
+    private static void churn(ProductStore store, int size) {
+        Random random = new Random(7);
+        long checksum = 0;
+        for (int i = 0; i < 20_000_000; i++) {
+            Product product = store.get((long) 1 + random.nextInt(size));
+            checksum += product.name.length();
+            if ((i & 0xFFFF) == 0) {
+                sink = new byte[1 << 20];
+            }
+        }
+        sink = checksum;
+    }
+    
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,123 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.journal.FsyncPolicy;
+import com.ecommerce.journal.Journal;
+import com.ecommerce.journal.Records;
+import com.ecommerce.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Catalog startup: loading a snapshot against replaying a journal that
+ * holds the same catalog plus a history of stock changes. Both rebuild the
+ * same id to product map, so index building, which costs the same either
+ * way, is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Decommerce.events.file=/dev/null")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CatalogSnapshotBenchmark {
+    
+    @Param({"10000", "100000"})
+    public int catalogSize;
+    
+    @Param({"0", "10"})
+    public int stockChangesPerProduct;
+    
+    private Path dir;
+    private CatalogSnapshots snapshots;
+    private Journal journal;
+    
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("catalog-bench");
+        ProductRepository repository = ProductRepository.getInstance();
+        for (int i = 0; i < catalogSize; i++) {
+            Product product = new Product();
+            product.name = "Product " + i;
+            product.description = "Benchmark product number " + i;
+            product.price = 1 + i % 500;
+            product.setStock(100);
+            product.category = "Category " + i % 20;
+            product.setActive(true);
+            product.createdAt = new Date();
+            repository.save(product);
+        }
+        
+        snapshots = new CatalogSnapshots(dir.resolve("catalog.snapshot"), null);
+        snapshots.write(repository);
+        
+        Path file = dir.resolve("ecommerce.journal");
+        Journal writer = Journal.open(file, FsyncPolicy.NEVER, 10);
+        for (Product product : repository.iterateById(null)) {
+            writer.append(Records.PRODUCT_SAVED, out -> Records.writeProduct(out, product));
+        }
+        for (int round = 0; round < stockChangesPerProduct; round++) {
+            for (Product product : repository.iterateById(null)) {
+                int delta = round % 2 == 0 ? -1 : 1;
+                writer.append(Records.STOCK_CHANGED, out -> {
+                    out.writeLong(product.id);
+                    out.writeInt(delta);
+                });
+            }
+        }
+        writer.close();
+        journal = Journal.open(file, FsyncPolicy.NEVER, 10);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    @Benchmark
+    public Map<Long, Product> loadSnapshot() {
+        Map<Long, Product> catalog = new HashMap<>(catalogSize * 2);
+        snapshots.load(product -> catalog.put(product.id, product));
+        return catalog;
+    }
+    
+    @Benchmark
+    public Map<Long, Product> replayJournal() {
+        Map<Long, Product> catalog = new HashMap<>(catalogSize * 2);
+        journal.replay((type, in) -> {
+            if (type == Records.PRODUCT_SAVED) {
+                Product product = Records.readProduct(in);
+                catalog.put(product.id, product);
+            } else if (type == Records.STOCK_CHANGED) {
+                Product product = catalog.get(in.readLong());
+                int delta = in.readInt();
+                if (product != null) {
+                    product.addStock(delta);
+                }
+            }
+        });
+        return catalog;
+    }
+}
@@ -1,12 +1,35 @@
 package com.ecommerce;
 
+import com.ecommerce.metrics.MetricsInterceptor;
+import com.ecommerce.model.OrderStatus;
+import com.ecommerce.repository.ProductRepository;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @SpringBootApplication
-public class EcommerceApplication {
+public class EcommerceApplication implements WebMvcConfigurer {
     
     public static void main(String[] args) {
         SpringApplication.run(EcommerceApplication.class, args);
     }
+    
+    @Bean(destroyMethod = "close")
+    public ProductRepository productRepository() {
+        return ProductRepository.getInstance();
+    }
+    
+    @Override
+    public void addFormatters(FormatterRegistry registry) {
+        // request parameters accept the same spellings as OrderStatus.parse
+        registry.addConverter(String.class, OrderStatus.class, OrderStatus::parse);
+    }
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new MetricsInterceptor());
+    }
 }
@@ -0,0 +1,124 @@
+package com.ecommerce.controller;
+
+import com.ecommerce.metrics.Metrics;
+import com.ecommerce.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Serialized catalog responses, reused until the catalog version moves on.
+ *
+ * An entry records the version read before its body was built, so it can
+ * only be older than what it claims and is rebuilt on the first request
+ * after any change. The ETag is a checksum of the body rather than the
+ * version, so a page nobody changed still answers 304 after writes
+ * elsewhere in the catalog.
+ */
+class CatalogResponseCache {
+    
+    private final ProductRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final Object overflowLock = new Object();
+    
+    private final LongAdder hits = Metrics.getInstance().counter("catalog_response_cache_hits");
+    private final LongAdder misses = Metrics.getInstance().counter("catalog_response_cache_misses");
+    
+    private static final class Entry {
+        final long version;
+        final HttpHeaders headers;
+        final byte[] body;
+        final String etag;
+        
+        Entry(long version, HttpHeaders headers, byte[] body) {
+            this.version = version;
+            this.headers = headers;
+            this.body = body;
+            CRC32C checksum = new CRC32C();
+            checksum.update(body, 0, body.length);
+            this.etag = "\"" + Long.toHexString((long) body.length << 32 | checksum.getValue()) + "\"";
+        }
+    }
+    
+    CatalogResponseCache(ProductRepository repository, ObjectMapper objectMapper, int maxEntries) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+    }
+    
+    static CatalogResponseCache fromSystemProperties(ProductRepository repository, ObjectMapper objectMapper) {
+        return new CatalogResponseCache(repository, objectMapper,
+                Integer.getInteger("ecommerce.catalog.response-cache.max-entries", 10_000));
+    }
+    
+    /**
+     * Returns the cached response for the key, building it with the loader
+     * when the catalog has changed since, or an empty 304 when the client's
+     * If-None-Match already matches. A body that is already a byte array is
+     * taken as serialized JSON; responses without a body are passed through
+     * and not cached.
+     */
+    ResponseEntity<byte[]> get(String key, WebRequest request, Supplier<ResponseEntity<?>> loader) {
+        long version = repository.getVersion();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            hits.increment();
+        } else {
+            misses.increment();
+            ResponseEntity<?> loaded = loader.get();
+            if (loaded.getBody() == null) {
+                return ResponseEntity.status(loaded.getStatusCode()).headers(loaded.getHeaders()).build();
+            }
+            entry = new Entry(version, loaded.getHeaders(), serialize(loaded.getBody()));
+            entries.merge(key, entry, (current, fresh) -> fresh.version >= current.version ? fresh : current);
+            if (entries.size() > maxEntries) {
+                evictOverflow(version);
+            }
+        }
+        
+        if (request.checkNotModified(entry.etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .headers(entry.headers)
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(entry.etag)
+                .body(entry.body);
+    }
+    
+    private byte[] serialize(Object body) {
+        if (body instanceof byte[]) {
+            return (byte[]) body;
+        }
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void evictOverflow(long version) {
+        synchronized (overflowLock) {
+            int target = maxEntries - Math.max(1, maxEntries / 64);
+            entries.values().removeIf(entry -> entry.version < version);
+            Iterator<String> keys = entries.keySet().iterator();
+            while (entries.size() > target && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ecommerce.controller;
+
+import com.ecommerce.metrics.Metrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class MetricsController {
+    
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    
+    @GetMapping(value = "/metrics", produces = PROMETHEUS_TEXT)
+    public String scrape() {
+        return Metrics.getInstance().toPrometheus();
+    }
+}
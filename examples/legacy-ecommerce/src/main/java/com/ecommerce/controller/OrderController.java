@@ -1,13 +1,22 @@
 package com.ecommerce.controller;
 
+import com.ecommerce.events.EventLog;
+import com.ecommerce.events.EventType;
+import com.ecommerce.metrics.Metrics;
 import com.ecommerce.model.Cart;
+import com.ecommerce.model.CheckoutRequest;
+import com.ecommerce.model.CheckoutResult;
 import com.ecommerce.model.Order;
+import com.ecommerce.model.OrderStatus;
 import com.ecommerce.service.OrderService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -16,14 +25,14 @@ public class OrderController {
     private OrderService orderService = OrderService.getInstance();
     private OrderService service;
     
-    public static Map<String, Integer> requestStats = new HashMap<>();
+    private final EventLog events = EventLog.getInstance();
+    private final LongAdder cartsCreated = Metrics.getInstance().counter("carts_created");
     
     @PostMapping("/cart")
     public Cart createCart(@RequestParam Long userId) {
         Cart cart = orderService.createCart(userId);
         
-        requestStats.put("carts_created",
-            requestStats.getOrDefault("carts_created", 0) + 1);
+        cartsCreated.increment();
         
         return cart;
     }
@@ -48,8 +57,8 @@ public class OrderController {
             @RequestParam Long productId,
             @RequestParam int quantity) {
         boolean result = orderService.addToCart(cartId, productId, quantity);
-
-        System.out.println("Added product " + productId + " to cart " + cartId);
+        
+        events.emit(EventType.CART_ITEM_ADDED, EventLog.id(cartId), EventLog.id(productId));
     }
     
     @PostMapping("/cart/{cartId}/add")
@@ -83,19 +92,30 @@ public class OrderController {
             billingAddress = request.get("billingAddress").toString();
         }
         
-        Order order = orderService.createOrder(userId, cartId, shippingAddress);
+        Order order = orderService.createOrder(userId, cartId, shippingAddress, billingAddress);
         
         if (order != null) {
-            order.billingAddress = billingAddress;
-            
             if (order.totalAmount > 100) {
-                order.status = "PRIORITY";
+                orderService.updateOrderStatus(order.id, OrderStatus.PRIORITY);
             }
         }
         
         return order;
     }
     
+    @PostMapping("/batch")
+    public List<CheckoutResult> createOrders(@RequestBody List<CheckoutRequest> requests) {
+        List<CheckoutResult> results = orderService.createOrders(requests);
+        
+        for (CheckoutResult result : results) {
+            if (result.order != null && result.order.totalAmount > 100) {
+                orderService.updateOrderStatus(result.order.id, OrderStatus.PRIORITY);
+            }
+        }
+        
+        return results;
+    }
+    
     @PostMapping("/create")
     public Object placeOrder(
             @RequestParam Long userId,
@@ -112,31 +132,48 @@ public class OrderController {
     public Order getOrder(@PathVariable Long orderId) {
         Order order = orderService.getOrder(orderId);
         
-        if (order != null && order.status.equals("PENDING")) {
-            order.status = "VIEWED";
+        if (order != null && order.status == OrderStatus.PENDING) {
+            orderService.updateOrderStatus(orderId, OrderStatus.VIEWED);
         }
         
         return order;
     }
     
+    @GetMapping
+    public List<Order> getOrdersByStatus(
+            @RequestParam OrderStatus status,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return orderService.getOrdersByStatus(status, after, Math.max(1, Math.min(limit, 1000)));
+    }
+    
     @GetMapping("/user/{userId}")
-    public List<Order> getUserOrders(@PathVariable Long userId) {
-        List<Order> orders = orderService.getOrdersByUser(userId);
+    public List<Order> getUserOrders(
+            @PathVariable Long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to) {
+        List<Order> orders = from == null && to == null
+                ? orderService.getOrdersByUser(userId)
+                : orderService.getOrdersByUser(userId, from, to);
         
+        // the listed orders are the stored ones; blank the address on copies
+        List<Order> response = new ArrayList<>(orders.size());
         for (Order o : orders) {
-            o.billingAddress = null;
+            Order copy = o.copy();
+            copy.billingAddress = null;
+            response.add(copy);
         }
         
-        return orders;
+        return response;
     }
     
     @PutMapping("/{orderId}/status")
     public void updateOrderStatus(
             @PathVariable Long orderId,
             @RequestParam String status) {
-        orderService.updateOrderStatus(orderId, status);
-        
-        System.out.println("Updated order " + orderId + " to " + status);
+        if (orderService.updateOrderStatus(orderId, status)) {
+            events.emit(EventType.ORDER_STATUS_UPDATED, EventLog.id(orderId), 0, status);
+        }
     }
     
     @PostMapping("/{orderId}/status")
@@ -149,12 +186,19 @@ public class OrderController {
             return "Order not found";
         }
         
-        if (newStatus.equals("CANCELLED") &&
-            !order.status.equals("PENDING")) {
+        OrderStatus status = OrderStatus.parse(newStatus);
+        if (status == null) {
+            return "Unknown status";
+        }
+        
+        if (status == OrderStatus.CANCELLED &&
+            order.status != OrderStatus.PENDING) {
             return "Cannot cancel";
         }
         
-        orderService.updateOrderStatus(orderId, newStatus);
+        if (!orderService.updateOrderStatus(orderId, status)) {
+            return "Cannot change status from " + order.status;
+        }
         return "Status updated";
     }
     
@@ -163,9 +207,9 @@ public class OrderController {
         boolean result = orderService.cancelOrder(orderId);
         
         if (result) {
-            System.out.println("Order cancelled: " + orderId);
+            events.emit(EventType.ORDER_CANCELLED, EventLog.id(orderId));
         } else {
-            System.out.println("Failed to cancel order: " + orderId);
+            events.emit(EventType.ORDER_CANCEL_FAILED, EventLog.id(orderId));
         }
         
         return result;
@@ -187,22 +231,29 @@ public class OrderController {
     }
     
     @GetMapping("/debug/stats")
-    public Map<String, Integer> getStats() {
-        return requestStats;
+    public Map<String, Object> getStats() {
+        return Metrics.getInstance().snapshot();
+    }
+    
+    @GetMapping("/debug/carts")
+    public Map<String, Long> getCartStats() {
+        return orderService.getCartStats();
     }
     
     @PostMapping("/admin/reset")
     public String resetAll() {
-        orderService.resetCounters();
-        requestStats.clear();
-        return "All data reset";
+        // order and cart ids are not rewound: stored, journaled and archived ones stay in use
+        Metrics.getInstance().reset();
+        return "Metrics reset";
     }
     
     @GetMapping("/{orderId}/ship")
     public String shipOrder(@PathVariable Long orderId) {
         Order order = orderService.getOrder(orderId);
         if (order != null) {
-            order.status = "SHIPPED";
+            if (!orderService.updateOrderStatus(orderId, OrderStatus.SHIPPED)) {
+                return "Cannot ship order in status " + order.status;
+            }
             return "Order shipped";
         }
         return "Order not found";
@@ -1,37 +1,93 @@
 package com.ecommerce.controller;
 
+import com.ecommerce.events.EventLog;
+import com.ecommerce.events.EventType;
+import com.ecommerce.metrics.Metrics;
 import com.ecommerce.model.Product;
 import com.ecommerce.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
     
-    private ProductRepository repository = ProductRepository.getInstance();
+    private final ProductRepository repository;
     private ProductRepository repo;
     
-    public int requestCount = 0;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    
+    private final ObjectMapper objectMapper;
+    private final CatalogResponseCache responses;
+    private final ProductJson productJson;
+    private final EventLog events = EventLog.getInstance();
+    
+    private final LongAdder listRequests = Metrics.getInstance().counter("product_list_requests");
+    
+    public ProductController(ProductRepository repository, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.responses = CatalogResponseCache.fromSystemProperties(repository, objectMapper);
+        this.productJson = new ProductJson(objectMapper);
+    }
     
     @GetMapping
-    public List<Product> getAllProducts() {
-        requestCount++;
-        System.out.println("Getting all products - count: " + requestCount);
-        return repository.findAll();
+    public ResponseEntity<byte[]> getAllProducts(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            WebRequest request) {
+        listRequests.increment();
+        events.emit(EventType.PRODUCTS_LISTED, listRequests.sum());
+        
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return responses.get("page:" + after + ":" + pageSize, request, () -> {
+            List<Product> page = repository.findPage(after, pageSize);
+            
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.size() == pageSize) {
+                Long cursor = page.get(page.size() - 1).id;
+                response.header(HttpHeaders.LINK,
+                        "</api/products?after=" + cursor + "&limit=" + pageSize + ">; rel=\"next\"");
+            }
+            return response.body(productJson.array(page));
+        });
+    }
+    
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamProducts(@RequestParam(required = false) Long after) {
+        return out -> productJson.writeLines(repository.iterateById(after), out);
     }
     
     @GetMapping("/{id}")
-    public Product getProduct(@PathVariable Long id) {
-        Product p = repository.findById(id);
-        
-        if (p != null) {
-            p.applySeasonalDiscount();
+    public ResponseEntity<byte[]> getProduct(@PathVariable Long id, WebRequest request) {
+        Product current = repository.findById(id);
+        if (current == null) {
+            return ResponseEntity.ok().build();
         }
         
-        return p;
+        // the seasonal price follows the pricing plan and the date, not the catalog version
+        return responses.get("product:" + id + "@" + current.seasonalPrice(), request, () -> {
+            Product p = repository.findById(id);
+            if (p == null) {
+                return ResponseEntity.ok().build();
+            }
+            
+            Product view = p.copy();
+            view.price = p.seasonalPrice();
+            return ResponseEntity.ok(view);
+        });
     }
     
     @GetMapping("/get/{id}")
@@ -40,16 +96,64 @@ public class ProductController {
     }
     
     @GetMapping("/category/{category}")
-    public List<Product> getProductsByCategory(@PathVariable String category) {
-        List<Product> products = repository.findByCategory(category);
-        
-        for (Product p : products) {
-            if (p.price > 1000) {
-                p.description = p.description + " [PREMIUM]";
+    public ResponseEntity<byte[]> getProductsByCategory(@PathVariable String category, WebRequest request) {
+        return responses.get("category:" + category, request, () -> {
+            List<Product> products = repository.findByCategory(category);
+            
+            List<Product> views = new ArrayList<>(products.size());
+            for (Product p : products) {
+                if (p.price > 1000) {
+                    Product premium = p.copy();
+                    premium.description = p.description + " [PREMIUM]";
+                    views.add(premium);
+                } else {
+                    views.add(p);
+                }
             }
-        }
-        
-        return products;
+            
+            return ResponseEntity.ok(productJson.array(views));
+        });
+    }
+    
+    @GetMapping("/price")
+    public ResponseEntity<byte[]> getProductsByPrice(
+            @RequestParam(defaultValue = "0") double min,
+            @RequestParam(defaultValue = "" + Double.MAX_VALUE) double max,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        List<Product> products = repository.findByPriceRange(min, max, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productJson.array(products));
+    }
+    
+    @GetMapping("/category/{category}/cheapest")
+    public ResponseEntity<byte[]> getCheapestInCategory(
+            @PathVariable String category,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<Product> products = repository.findCheapest(category, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productJson.array(products));
+    }
+    
+    @GetMapping("/category/{category}/most-expensive")
+    public ResponseEntity<byte[]> getMostExpensiveInCategory(
+            @PathVariable String category,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<Product> products = repository.findMostExpensive(category, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productJson.array(products));
+    }
+    
+    @GetMapping("/category/{category}/count")
+    public int countProductsByCategory(@PathVariable String category) {
+        return repository.countByCategory(category);
+    }
+    
+    @GetMapping("/categories")
+    public Map<String, Integer> getCategoryCounts() {
+        return repository.countsByCategory();
     }
     
     @PostMapping
@@ -69,17 +173,17 @@ public class ProductController {
     
     @PutMapping("/{id}")
     public Product updateProduct(@PathVariable Long id, @RequestBody Product product) {
-        Product existing = repository.findById(id);
+        Product updated = repository.update(id, existing -> {
+            existing.name = product.name;
+            existing.price = product.price;
+        });
         
-        if (existing == null) {
+        if (updated == null) {
             product.id = id;
             return repository.save(product);
         }
         
-        existing.name = product.name;
-        existing.price = product.price;
-
-        return repository.save(existing);
+        return updated;
     }
     
     @PostMapping("/{id}/update")
@@ -91,7 +195,7 @@ public class ProductController {
     @DeleteMapping("/{id}")
     public void deleteProduct(@PathVariable Long id) {
         repository.delete(id);
-        System.out.println("Deleted product: " + id);
+        events.emit(EventType.PRODUCT_DELETED, EventLog.id(id));
     }
     
     @DeleteMapping("/remove/{id}")
@@ -102,48 +206,31 @@ public class ProductController {
     
     @PostMapping("/{id}/stock")
     public Product updateStock(@PathVariable Long id, @RequestParam int quantity) {
-        Product product = repository.findById(id);
-        if (product != null) {
+        return repository.update(id, product -> {
             product.setStock(quantity);
             
-            if (quantity == 0) {
-                product.active = false;
-            } else {
-                product.active = true;
-            }
-            
-            return repository.save(product);
-        }
-        return null;
+            product.setActive(quantity != 0);
+        });
     }
     
     @PostMapping("/{id}/addStock")
     public void addStock(@PathVariable Long id, @RequestParam int qty) {
-        Product product = repository.findById(id);
-        if (product == null) {
+        if (!repository.addStock(id, qty)) {
             throw new RuntimeException("Product not found");
         }
-        product.stock = product.stock + qty;
-        repository.save(product);
     }
     
     @GetMapping("/search")
-    public List<Product> search(@RequestParam(required = false) String query) {
-        if (query == null || query.isEmpty()) {
-            return repository.findAll();
-        }
-        
-        List<Product> all = repository.findAll();
-        List<Product> results = new java.util.ArrayList<>();
-        
-        for (Product p : all) {
-            if (p.name.contains(query) ||
-                (p.description != null && p.description.contains(query))) {
-                results.add(p);
-            }
-        }
+    public ResponseEntity<byte[]> search(
+            @RequestParam(required = false) String query,
+            @RequestParam(defaultValue = "50") int limit) {
+        List<Product> results = query == null || query.isEmpty()
+                ? repository.findAll()
+                : repository.search(query, Math.min(limit, 500));
         
-        return results;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productJson.array(results));
     }
     
     @GetMapping("/{id}/details")
@@ -155,7 +242,7 @@ public class ProductController {
         }
         
         return String.format("Product: %s, Price: %s, Stock: %d",
-                           p.name, p.getDisplayPrice(), p.stock);
+                           p.name, p.getDisplayPrice(), p.getStock());
     }
     
     @PostMapping("/reset")
@@ -0,0 +1,69 @@
+package com.ecommerce.controller;
+
+import com.ecommerce.model.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+/**
+ * Writes products from their cached serialized form, so a listing costs a
+ * copy of each product's bytes instead of a pass of Jackson over its
+ * fields. Output is byte-for-byte what the shared ObjectMapper would write
+ * for the same list.
+ */
+class ProductJson {
+    
+    private final ObjectWriter writer;
+    
+    ProductJson(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writerFor(Product.class);
+    }
+    
+    byte[] bytes(Product product) {
+        return product.serializedWith(this::serialize);
+    }
+    
+    byte[] array(Collection<Product> products) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + products.size() * 256);
+        try {
+            writeArray(products, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    void writeArray(Iterable<Product> products, OutputStream out) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (Product product : products) {
+            if (!first) {
+                out.write(',');
+            }
+            out.write(bytes(product));
+            first = false;
+        }
+        out.write(']');
+    }
+    
+    void writeLines(Iterable<Product> products, OutputStream out) throws IOException {
+        for (Product product : products) {
+            out.write(bytes(product));
+            out.write('\n');
+        }
+    }
+    
+    private byte[] serialize(Product product) {
+        try {
+            return writer.writeValueAsBytes(product);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
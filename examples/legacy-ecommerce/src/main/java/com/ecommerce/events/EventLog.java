@@ -0,0 +1,236 @@
+package com.ecommerce.events;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous structured event log.
+ *
+ * Request threads claim a slot in a pre-allocated ring and store the event
+ * type, a timestamp, two numbers and a detail reference; nothing is
+ * formatted on their side. A single writer thread drains published slots,
+ * renders them as {@code time TYPE key=value ...} lines and writes each
+ * batch with one channel write.
+ *
+ * When the ring is full an event is either dropped and counted (DROP, the
+ * default) or the caller waits for the writer (BLOCK).
+ */
+public class EventLog {
+    
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+    
+    private static final int BATCH_BYTES = 64 * 1024;
+    
+    private final Slot[] ring;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final FileChannel channel;
+    
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+    
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+    private final StringBuilder line = new StringBuilder(256);
+    
+    EventLog(int size, OverflowPolicy policy, FileChannel channel) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two: " + size);
+        }
+        this.ring = new Slot[size];
+        this.mask = size - 1;
+        this.policy = policy;
+        this.channel = channel;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        Thread writer = new Thread(this::drain, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * The process-wide log, configured with the system properties
+     * {@code ecommerce.events.file} (default: standard output),
+     * {@code ecommerce.events.policy} (DROP or BLOCK) and
+     * {@code ecommerce.events.ring-size} (default 65536).
+     */
+    public static EventLog getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private static class Holder {
+        static final EventLog INSTANCE = fromSystemProperties();
+    }
+    
+    private static EventLog fromSystemProperties() {
+        String file = System.getProperty("ecommerce.events.file");
+        FileChannel channel;
+        try {
+            channel = file == null || file.isEmpty()
+                    ? new FileOutputStream(FileDescriptor.out).getChannel()
+                    : FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open event log " + file, e);
+        }
+        OverflowPolicy policy = OverflowPolicy.valueOf(System.getProperty("ecommerce.events.policy", "DROP"));
+        EventLog log = new EventLog(Integer.getInteger("ecommerce.events.ring-size", 1 << 16), policy, channel);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> log.awaitDrained(1000), "event-log-shutdown"));
+        return log;
+    }
+    
+    public static long id(Long value) {
+        return value == null ? -1 : value;
+    }
+    
+    public void emit(EventType type, long first) {
+        emit(type, first, 0, null);
+    }
+    
+    public void emit(EventType type, long first, long second) {
+        emit(type, first, second, null);
+    }
+    
+    public void emit(EventType type, long first, long second, Object detail) {
+        long sequence;
+        int idle = 0;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed >= ring.length) {
+                if (policy == OverflowPolicy.DROP) {
+                    dropped.increment();
+                    return;
+                }
+                idle = backOff(idle);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        Slot slot = ring[(int) sequence & mask];
+        slot.type = type;
+        slot.timestamp = System.currentTimeMillis();
+        slot.first = first;
+        slot.second = second;
+        slot.detail = detail;
+        slot.published = sequence;
+    }
+    
+    /**
+     * Waits up to the timeout for everything emitted so far to be written.
+     */
+    public boolean awaitDrained(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (consumed < target) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+    
+    public long getDropped() {
+        return dropped.sum();
+    }
+    
+    private void drain() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            long end = next;
+            while (end - next < ring.length && ring[(int) end & mask].published == end) {
+                end++;
+            }
+            if (end == next) {
+                idle = backOff(idle);
+                continue;
+            }
+            idle = 0;
+            for (long sequence = next; sequence < end; sequence++) {
+                Slot slot = ring[(int) sequence & mask];
+                append(slot);
+                slot.detail = null;
+            }
+            next = end;
+            // only once written, so awaitDrained never returns with events still buffered
+            flush();
+            consumed = next;
+        }
+    }
+    
+    private void append(Slot slot) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(slot.timestamp)).append(' ').append(slot.type.name());
+        if (slot.type.first != null) {
+            line.append(' ').append(slot.type.first).append('=').append(slot.first);
+        }
+        if (slot.type.second != null) {
+            line.append(' ').append(slot.type.second).append('=').append(slot.second);
+        }
+        if (slot.type.detail != null) {
+            line.append(' ').append(slot.type.detail).append("=\"").append(slot.detail).append('"');
+        }
+        line.append('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > batch.remaining()) {
+            flush();
+        }
+        if (bytes.length > batch.remaining()) {
+            write(ByteBuffer.wrap(bytes));
+        } else {
+            batch.put(bytes);
+        }
+    }
+    
+    private void flush() {
+        batch.flip();
+        write(batch);
+        batch.clear();
+    }
+    
+    private void write(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            buffer.position(buffer.limit());
+            dropped.increment();
+        }
+    }
+    
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(idle < 200 ? 10_000 : 1_000_000);
+        }
+        return idle + 1;
+    }
+    
+    private static class Slot {
+        
+        volatile long published = -1;
+        
+        EventType type;
+        long timestamp;
+        long first;
+        long second;
+        Object detail;
+    }
+}
@@ -0,0 +1,39 @@
+package com.ecommerce.events;
+
+/**
+ * Everything the application logs, with the names its two numeric fields
+ * and its detail are written under (null when unused).
+ */
+public enum EventType {
+    
+    PRODUCT_AVAILABILITY_CHECKED("productId", "available", "name"),
+    PRODUCTS_LISTED("requests", null, null),
+    PRODUCT_DELETED("productId", null, null),
+    
+    CART_CREATED("cartId", "userId", null),
+    CART_NOT_FOUND("cartId", null, null),
+    CART_ITEM_ADDED("cartId", "productId", null),
+    CART_LARGE("cartId", "lines", null),
+    CART_EMPTY_LINES_CLEARED("cartId", null, null),
+    CART_EMPTY("cartId", null, null),
+    INSUFFICIENT_STOCK("productId", "quantity", null),
+    
+    ORDER_CREATED("userId", "items", null),
+    ORDER_NOT_FOUND("orderId", null, null),
+    ORDER_TOTAL_MISMATCH("orderId", null, null),
+    ORDER_STOCK_SHORTAGE("productId", null, null),
+    ORDER_STATUS_UPDATED("orderId", null, "status"),
+    ORDER_CANCELLED("orderId", null, null),
+    ORDER_CANCEL_FAILED("orderId", null, null),
+    PAYMENT_PROCESSING("orderId", null, null);
+    
+    final String first;
+    final String second;
+    final String detail;
+    
+    EventType(String first, String second, String detail) {
+        this.first = first;
+        this.second = second;
+        this.detail = detail;
+    }
+}
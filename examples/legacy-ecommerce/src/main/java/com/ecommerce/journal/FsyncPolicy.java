@@ -0,0 +1,10 @@
+package com.ecommerce.journal;
+
+public enum FsyncPolicy {
+    /** Appenders wait until their record is on disk; one fsync covers every record in the group. */
+    ALWAYS,
+    /** Records are written as they arrive and forced to disk at most once per interval. */
+    INTERVAL,
+    /** Records are written but never forced; the OS decides when they reach the disk. */
+    NEVER
+}
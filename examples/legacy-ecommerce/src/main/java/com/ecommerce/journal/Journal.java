@@ -0,0 +1,385 @@
+package com.ecommerce.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal.
+ *
+ * Each record is framed as {@code [length][crc32][type][payload]}. Appenders
+ * encode into a thread-local scratch buffer and copy the frame into a shared
+ * buffer under a short lock; a single flusher thread swaps that buffer out,
+ * writes it with one {@link FileChannel#write} and forces it according to
+ * the {@link FsyncPolicy}, so many appends share one write and one fsync.
+ *
+ * On open the file is scanned and truncated after the last intact frame,
+ * which drops a record torn by a crash.
+ */
+public class Journal implements Closeable {
+    
+    public interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+    
+    public interface RecordHandler {
+        void handle(byte type, DataInput payload) throws IOException;
+    }
+    
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    
+    private final Path file;
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalNanos;
+    private final long replayEnd;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer flushing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean closed;
+    private IOException failure;
+    
+    private volatile long flushedPosition;
+    
+    private final Thread flusher;
+    
+    private Journal(Path file, FsyncPolicy policy, long fsyncIntervalMillis) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.replayEnd = validLength();
+        channel.truncate(replayEnd);
+        channel.position(replayEnd);
+        this.flushedPosition = replayEnd;
+        
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    public static Journal open(Path file, FsyncPolicy policy, long fsyncIntervalMillis) {
+        try {
+            return new Journal(file, policy, fsyncIntervalMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open journal " + file, e);
+        }
+    }
+    
+    /**
+     * The process-wide journal, configured with the system properties
+     * {@code ecommerce.journal.dir}, {@code ecommerce.journal.fsync} and
+     * {@code ecommerce.journal.fsync-interval-ms}. Without a directory
+     * journaling is off and this returns null.
+     */
+    public static Journal getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private static class Holder {
+        static final Journal INSTANCE = fromSystemProperties();
+    }
+    
+    private static Journal fromSystemProperties() {
+        String dir = System.getProperty("ecommerce.journal.dir");
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        FsyncPolicy policy = FsyncPolicy.valueOf(System.getProperty("ecommerce.journal.fsync", "INTERVAL"));
+        Journal journal = open(Paths.get(dir, "ecommerce.journal"), policy,
+                Long.getLong("ecommerce.journal.fsync-interval-ms", 10));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Could not close journal: " + e.getMessage());
+            }
+        }, "journal-shutdown"));
+        return journal;
+    }
+    
+    public Path getFile() {
+        return file;
+    }
+    
+    public boolean isEmpty() {
+        return replayEnd == 0;
+    }
+    
+    /**
+     * End of the records present when the journal was opened.
+     */
+    public long getReplayEnd() {
+        return replayEnd;
+    }
+    
+    /**
+     * End of the last complete frame handed to the file. Always falls on a
+     * record boundary.
+     */
+    public long getFlushedPosition() {
+        return flushedPosition;
+    }
+    
+    public long append(byte type, RecordWriter writer) {
+        Scratch scratch = SCRATCH.get();
+        scratch.bytes.reset();
+        try {
+            writer.write(scratch.out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return append(type, scratch);
+    }
+    
+    private long append(byte type, Scratch scratch) {
+        int payloadLength = scratch.bytes.size();
+        int frameLength = HEADER_SIZE + 1 + payloadLength;
+        if (frameLength > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Journal record too large: " + frameLength + " bytes");
+        }
+        scratch.crc.reset();
+        scratch.crc.update(type);
+        scratch.crc.update(scratch.bytes.buffer(), 0, payloadLength);
+        
+        long seq;
+        lock.lock();
+        try {
+            while (active.remaining() < frameLength) {
+                checkOpen();
+                dataAvailable.signal();
+                progress.awaitUninterruptibly();
+            }
+            checkOpen();
+            active.putInt(1 + payloadLength);
+            active.putInt((int) scratch.crc.getValue());
+            active.put(type);
+            active.put(scratch.bytes.buffer(), 0, payloadLength);
+            seq = ++appendedSeq;
+            if (policy == FsyncPolicy.ALWAYS) {
+                dataAvailable.signal();
+                while (durableSeq < seq) {
+                    checkOpen();
+                    progress.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return seq;
+    }
+    
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+    
+    private void flushLoop() {
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+        while (true) {
+            long target = -1;
+            lock.lock();
+            try {
+                if (policy == FsyncPolicy.ALWAYS) {
+                    while (active.position() == 0 && !closed) {
+                        dataAvailable.awaitUninterruptibly();
+                    }
+                } else if (active.position() == 0 && !closed) {
+                    dataAvailable.awaitNanos(fsyncIntervalNanos);
+                }
+                if (active.position() > 0) {
+                    ByteBuffer full = active;
+                    active = flushing;
+                    flushing = full;
+                    target = appendedSeq;
+                } else if (closed) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            
+            IOException error = null;
+            try {
+                if (target >= 0) {
+                    flushing.flip();
+                    while (flushing.hasRemaining()) {
+                        channel.write(flushing);
+                    }
+                    flushing.clear();
+                    flushedPosition = channel.position();
+                    unforced = true;
+                }
+                long now = System.nanoTime();
+                if (unforced && (policy == FsyncPolicy.ALWAYS
+                        || (policy == FsyncPolicy.INTERVAL && now - lastForce >= fsyncIntervalNanos))) {
+                    channel.force(false);
+                    lastForce = now;
+                    unforced = false;
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            
+            if (target < 0 && error == null) {
+                continue;
+            }
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = target;
+                }
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Feeds every intact record written before this journal was opened to
+     * the handler, in append order.
+     */
+    public void replay(RecordHandler handler) {
+        replay(0, replayEnd, handler);
+    }
+    
+    /**
+     * Feeds the records between two record boundaries to the handler, in
+     * append order. Safe to call while appends continue past {@code to}.
+     */
+    public void replay(long from, long to, RecordHandler handler) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = from;
+        try {
+            while (position < to) {
+                header.clear();
+                readFully(header, position);
+                int length = header.getInt();
+                header.getInt();
+                ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(record, position + HEADER_SIZE);
+                byte[] bytes = record.array();
+                handler.handle(bytes[0], new DataInputStream(new ByteArrayInputStream(bytes, 1, length - 1)));
+                position += HEADER_SIZE + length;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay journal " + file, e);
+        }
+    }
+    
+    private long validLength() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(record, position + HEADER_SIZE);
+            crc.reset();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal " + file);
+            }
+        }
+        buffer.flip();
+    }
+    
+    /**
+     * Flushes and forces everything appended so far, then stops the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(true);
+        channel.close();
+    }
+    
+    private static class Scratch {
+        final ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final CRC32 crc = new CRC32();
+    }
+    
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(256);
+        }
+        
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.ecommerce.journal;
+
+import com.ecommerce.model.Order;
+import com.ecommerce.model.OrderStatus;
+import com.ecommerce.model.Product;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Record types written to the {@link Journal} and the binary layout of
+ * their payloads.
+ */
+public final class Records {
+    
+    public static final byte PRODUCT_SAVED = 1;
+    public static final byte PRODUCT_DELETED = 2;
+    public static final byte STOCK_CHANGED = 3;
+    
+    public static final byte CART_CREATED = 10;
+    public static final byte CART_LINE = 11;
+    public static final byte CART_REMOVED = 12;
+    
+    public static final byte ORDER_CREATED = 20;
+    public static final byte ORDER_STATUS = 21;
+    public static final byte ORDER_REMOVED = 22;
+    public static final byte ORDER_ARCHIVED = 23;
+    
+    private Records() {
+    }
+    
+    public static void writeProduct(DataOutput out, Product product) throws IOException {
+        out.writeLong(product.id);
+        writeString(out, product.name);
+        writeString(out, product.description);
+        out.writeDouble(product.price);
+        out.writeInt(product.getStock());
+        writeString(out, product.category);
+        out.writeBoolean(product.isActive());
+        writeDate(out, product.createdAt);
+        writeString(out, product.status);
+    }
+    
+    public static Product readProduct(DataInput in) throws IOException {
+        Product product = new Product();
+        product.id = in.readLong();
+        product.name = readString(in);
+        product.description = readString(in);
+        product.price = in.readDouble();
+        product.setStock(in.readInt());
+        product.category = readString(in);
+        product.setActive(in.readBoolean());
+        product.createdAt = readDate(in);
+        product.status = readString(in);
+        return product;
+    }
+    
+    public static void writeOrder(DataOutput out, Order order) throws IOException {
+        out.writeLong(order.id);
+        writeLong(out, order.userId);
+        out.writeDouble(order.totalAmount);
+        writeString(out, order.status.name());
+        // slot of the retired free-form order status, kept so existing files still read
+        writeString(out, null);
+        writeString(out, order.shippingAddress);
+        writeString(out, order.billingAddress);
+        writeDate(out, order.orderDate);
+        writeDate(out, order.deliveryDate);
+        writeDate(out, order.estimatedDelivery);
+        out.writeInt(order.totalItems);
+        out.writeInt(order.items.size());
+        for (Object obj : order.items) {
+            Order.OrderItem item = (Order.OrderItem) obj;
+            writeLong(out, item.productId);
+            writeString(out, item.productName);
+            out.writeInt(item.quantity);
+            out.writeDouble(item.price);
+            out.writeDouble(item.vat);
+        }
+    }
+    
+    public static Order readOrder(DataInput in) throws IOException {
+        Order order = new Order();
+        order.id = in.readLong();
+        order.userId = readLong(in);
+        order.totalAmount = in.readDouble();
+        OrderStatus status = OrderStatus.parse(readString(in));
+        order.status = status != null ? status : OrderStatus.PENDING;
+        readString(in);
+        order.shippingAddress = readString(in);
+        order.billingAddress = readString(in);
+        order.orderDate = readDate(in);
+        order.deliveryDate = readDate(in);
+        order.estimatedDelivery = readDate(in);
+        order.totalItems = in.readInt();
+        int count = in.readInt();
+        ArrayList<Order.OrderItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order.OrderItem item = new Order.OrderItem();
+            item.productId = readLong(in);
+            item.productName = readString(in);
+            item.quantity = in.readInt();
+            item.price = in.readDouble();
+            item.vat = in.readDouble();
+            items.add(item);
+        }
+        order.items = items;
+        return order;
+    }
+    
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    public static void writeLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+    
+    public static Long readLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+    
+    public static void writeDate(DataOutput out, Date value) throws IOException {
+        out.writeLong(value == null ? Long.MIN_VALUE : value.getTime());
+    }
+    
+    public static Date readDate(DataInput in) throws IOException {
+        long time = in.readLong();
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+}
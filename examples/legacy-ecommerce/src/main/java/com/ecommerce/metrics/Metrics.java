@@ -0,0 +1,150 @@
+package com.ecommerce.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of counters and latency histograms.
+ *
+ * A metric is identified by a name and at most one label, e.g.
+ * {@code http_request_duration{endpoint="GET /api/orders/{orderId}"}}. Lookups
+ * go through a concurrent map, so hot paths should keep the returned
+ * instance in a field rather than looking it up per call.
+ */
+public class Metrics {
+    
+    private static final Metrics INSTANCE = new Metrics();
+    
+    private final Map<String, Metric<LongAdder>> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Metric<LatencyHistogram>> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> timerCache = new ConcurrentHashMap<>();
+    
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+    
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Metric<>(name, null, null, new LongAdder())).value;
+    }
+    
+    public LatencyHistogram timer(String name, String label, String labelValue) {
+        String key = key(name, label, labelValue);
+        LatencyHistogram histogram = timerCache.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        return timerCache.computeIfAbsent(key, k -> timers.computeIfAbsent(k,
+                ignored -> new Metric<>(name, label, labelValue, new LatencyHistogram())).value);
+    }
+    
+    /**
+     * Counter values and, per timer, its count and p50/p99/p999/max in
+     * microseconds.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, Metric<LongAdder>> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().value.sum());
+        }
+        for (Map.Entry<String, Metric<LatencyHistogram>> entry : timers.entrySet()) {
+            LatencyHistogram.Snapshot histogram = entry.getValue().value.snapshot();
+            Map<String, Long> summary = new LinkedHashMap<>();
+            summary.put("count", histogram.getCount());
+            summary.put("p50_us", TimeUnit.NANOSECONDS.toMicros(histogram.percentile(0.5)));
+            summary.put("p99_us", TimeUnit.NANOSECONDS.toMicros(histogram.percentile(0.99)));
+            summary.put("p999_us", TimeUnit.NANOSECONDS.toMicros(histogram.percentile(0.999)));
+            summary.put("max_us", TimeUnit.NANOSECONDS.toMicros(histogram.max()));
+            snapshot.put(entry.getKey(), summary);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * The registry in the Prometheus text exposition format: counters as
+     * {@code _total} and timers as summaries in seconds.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String family = null;
+        for (Metric<LongAdder> metric : counters.values()) {
+            out.append("# TYPE ").append(metric.name).append("_total counter\n");
+            out.append(metric.name).append("_total ").append(metric.value.sum()).append('\n');
+        }
+        for (Metric<LatencyHistogram> metric : timers.values()) {
+            if (!metric.name.equals(family)) {
+                family = metric.name;
+                out.append("# TYPE ").append(family).append("_seconds summary\n");
+            }
+            LatencyHistogram.Snapshot histogram = metric.value.snapshot();
+            appendQuantile(out, metric, "0.5", histogram.percentile(0.5));
+            appendQuantile(out, metric, "0.99", histogram.percentile(0.99));
+            appendQuantile(out, metric, "0.999", histogram.percentile(0.999));
+            out.append(metric.name).append("_seconds_sum");
+            appendLabels(out, metric, null);
+            out.append(' ').append(histogram.getSum() / 1e9).append('\n');
+            out.append(metric.name).append("_seconds_count");
+            appendLabels(out, metric, null);
+            out.append(' ').append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+    
+    public void reset() {
+        for (Metric<LongAdder> metric : counters.values()) {
+            metric.value.reset();
+        }
+        for (Metric<LatencyHistogram> metric : timers.values()) {
+            metric.value.reset();
+        }
+    }
+    
+    private static void appendQuantile(StringBuilder out, Metric<?> metric, String quantile, long nanos) {
+        out.append(metric.name).append("_seconds");
+        appendLabels(out, metric, quantile);
+        out.append(' ').append(nanos / 1e9).append('\n');
+    }
+    
+    private static void appendLabels(StringBuilder out, Metric<?> metric, String quantile) {
+        if (metric.label == null && quantile == null) {
+            return;
+        }
+        out.append('{');
+        if (metric.label != null) {
+            out.append(metric.label).append("=\"").append(escape(metric.labelValue)).append('"');
+            if (quantile != null) {
+                out.append(',');
+            }
+        }
+        if (quantile != null) {
+            out.append("quantile=\"").append(quantile).append('"');
+        }
+        out.append('}');
+    }
+    
+    private static String key(String name, String label, String labelValue) {
+        return label == null ? name : name + '{' + label + "=\"" + escape(labelValue) + "\"}";
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    private static class Metric<T> {
+        
+        final String name;
+        final String label;
+        final String labelValue;
+        final T value;
+        
+        Metric(String name, String label, String labelValue, T value) {
+            this.name = name;
+            this.label = label;
+            this.labelValue = labelValue;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.ecommerce.metrics;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Times every handled request into a histogram per method and matched
+ * route pattern, so {@code /api/orders/1} and {@code /api/orders/2} share
+ * {@code GET /api/orders/{orderId}}.
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+    
+    private static final String START = MetricsInterceptor.class.getName() + ".start";
+    
+    private final Metrics metrics = Metrics.getInstance();
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START, System.nanoTime());
+        return true;
+    }
+    
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object start = request.getAttribute(START);
+        if (start == null) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = request.getMethod() + " " + (pattern != null ? pattern : "unmatched");
+        metrics.timer("http_request_duration", "endpoint", endpoint).recordSince((Long) start);
+    }
+}
@@ -1,130 +1,197 @@
 package com.ecommerce.model;
 
+import com.ecommerce.events.EventLog;
+import com.ecommerce.events.EventType;
+import com.ecommerce.pricing.PricingEngine;
+import com.ecommerce.pricing.PricingPlan;
+
 import java.util.Date;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Cart {
     
     public Long id;
     public Long userId;
-    public ArrayList items;
     public Date createdAt;
-    public Date updatedAt;
+    public volatile Date updatedAt;
     public String status;
-    private double cachedTotal = -1;
+    
+    // one line per product; item count and subtotals follow every mutation
+    private final Map<Long, CartItem> lines = new LinkedHashMap<>();
+    private int totalItems;
+    private long subtotalCents;
+    
+    // sum of the priced line totals, valid for one plan and month
+    private long pricedSubtotalCents;
+    private PricingPlan pricedWith;
+    private int pricedMonth;
     
     public Cart() {
-        this.items = new ArrayList();
         this.createdAt = new Date();
     }
     
     public Cart(Long id, Long userId) {
         this.id = id;
         this.userId = userId;
-        this.items = new ArrayList();
         this.createdAt = new Date();
         this.status = "NEW";
     }
     
-    public void addItem(Product product, int quantity) {
-        CartItem item = new CartItem();
-        item.product = product;
-        item.quantity = quantity;
-        item.price = product.price;
-        items.add(item);
+    public synchronized void addItem(Product product, int quantity) {
+        if (product == null || product.id == null) {
+            throw new IllegalArgumentException("Cannot add an unknown product to a cart");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        
+        CartItem item = lines.get(product.id);
+        if (item == null) {
+            item = new CartItem();
+            item.product = product;
+            item.price = product.price;
+            lines.put(product.id, item);
+        }
+        changeQuantity(item, item.quantity + quantity);
         this.updatedAt = new Date();
 
-        if (items.size() > 10) {
-            System.out.println("WARNING: Cart has more than 10 items!");
+        if (lines.size() > 10) {
+            EventLog.getInstance().emit(EventType.CART_LARGE, EventLog.id(id), lines.size());
         }
     }
     
-    public void updateQuantity(Long productId, int newQty) {
-        boolean found = false;
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = (CartItem) items.get(i);
-            if (item.product.id == productId) {
-                item.quantity = newQty;
-                found = true;
-            }
+    public synchronized void updateQuantity(Long productId, int newQty) {
+        CartItem item = lines.get(productId);
+        if (item == null) {
+            return;
         }
-        if (!found) {
-            CartItem item = new CartItem();
-            item.quantity = newQty;
-            items.add(item);
+        if (newQty <= 0) {
+            removeItem(productId);
+            return;
         }
+        changeQuantity(item, newQty);
+        this.updatedAt = new Date();
     }
     
-    public void removeItem(Long productId) {
-        for (int i = 0; i < items.size(); i++) {
-            for (int j = 0; j < items.size(); j++) {
-                CartItem item = (CartItem) items.get(i);
-                if (item.product != null && item.product.id.equals(productId)) {
-                    items.remove(i);
-                }
-            }
+    public synchronized void removeItem(Long productId) {
+        CartItem item = lines.get(productId);
+        if (item != null) {
+            changeQuantity(item, 0);
+            lines.remove(productId);
         }
         this.updatedAt = new Date();
-        cachedTotal = -1;
     }
     
-    public double calculateTotal() {
-        if (cachedTotal >= 0) {
-            return cachedTotal;
-        }
-        
-        double total = 0;
-        for (int i = 0; i < items.size(); i++) {
-            Object obj = items.get(i);
-            if (obj instanceof CartItem) {
-                CartItem item = (CartItem) obj;
-                if (item.product != null) {
-                    total += item.product.price * item.quantity;
-                }
+    /**
+     * Sets a line back to a known quantity and price, as recorded earlier.
+     * Used when carts are rebuilt from the journal.
+     */
+    public synchronized void restoreItem(Product product, int quantity, double price, Date updatedAt) {
+        CartItem item = lines.get(product.id);
+        if (quantity <= 0) {
+            if (item != null) {
+                changeQuantity(item, 0);
+                lines.remove(product.id);
             }
+        } else {
+            if (item == null) {
+                item = new CartItem();
+                item.product = product;
+                lines.put(product.id, item);
+            }
+            changeQuantity(item, 0);
+            item.price = price;
+            changeQuantity(item, quantity);
         }
-        
-        if (total > 100) {
-            total = total * 0.95;
-        }
-        
-        cachedTotal = total;
-        return total;
+        this.updatedAt = updatedAt;
+    }
+    
+    // the line must still be in the cart, so a repricing pass includes it
+    private void changeQuantity(CartItem item, int newQty) {
+        PricingPlan plan = currentPlan();
+        int delta = newQty - item.quantity;
+        totalItems += delta;
+        subtotalCents += delta * Math.round(item.price * 100);
+        pricedSubtotalCents += pricedLine(plan, item, newQty) - pricedLine(plan, item, item.quantity);
+        item.quantity = newQty;
     }
     
-    public double getTotal() {
-        double sum = 0.0;
-        for (Object o : items) {
-            CartItem ci = (CartItem) o;
-            sum = sum + (ci.price * ci.quantity);
+    /**
+     * The current plan, after repricing every line if the rules or the month
+     * changed since the priced subtotal was last brought up to date.
+     */
+    private PricingPlan currentPlan() {
+        PricingPlan plan = PricingEngine.getInstance().getPlan();
+        int month = plan.currentMonth();
+        if (plan != pricedWith || month != pricedMonth) {
+            long subtotal = 0;
+            for (CartItem line : lines.values()) {
+                subtotal += pricedLine(plan, line, line.quantity);
+            }
+            pricedSubtotalCents = subtotal;
+            pricedWith = plan;
+            pricedMonth = month;
         }
-        return sum;
+        return plan;
     }
     
-    public int getTotalItems() {
-        int count = 0;
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = (CartItem) items.get(i);
-            count += item.quantity;
+    private static long pricedLine(PricingPlan plan, CartItem line, int quantity) {
+        if (quantity <= 0) {
+            return 0;
         }
-        return count;
+        long unitCents = plan.unitPrice(PricingPlan.toCents(line.price), line.product.category);
+        return plan.lineTotal(unitCents, quantity);
     }
     
-    public boolean isEmpty() {
-        return getTotalItems() == 0;
+    public synchronized double calculateTotal() {
+        PricingPlan plan = currentPlan();
+        return plan.orderTotal(pricedSubtotalCents) / 100.0;
     }
     
-    public void clearEmptyItems() {
-        ArrayList newItems = new ArrayList();
-        for (int i = 0; i < items.size(); i++) {
-            CartItem item = (CartItem) items.get(i);
-            if (item.quantity > 0) {
-                newItems.add(item);
+    public synchronized double getTotal() {
+        return subtotalCents / 100.0;
+    }
+    
+    public synchronized int getTotalItems() {
+        return totalItems;
+    }
+    
+    public synchronized boolean isEmpty() {
+        return totalItems == 0;
+    }
+    
+    public synchronized CartItem getItem(Long productId) {
+        CartItem line = lines.get(productId);
+        return line == null ? null : line.copy();
+    }
+    
+    public synchronized int lineCount() {
+        return lines.size();
+    }
+    
+    /**
+     * Copies of the cart lines, so callers never observe a line mid-update.
+     */
+    public synchronized List<CartItem> getItems() {
+        List<CartItem> items = new ArrayList<>(lines.size());
+        for (CartItem line : lines.values()) {
+            items.add(line.copy());
+        }
+        return items;
+    }
+    
+    public synchronized void clearEmptyItems() {
+        Iterator<CartItem> it = lines.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().quantity <= 0) {
+                it.remove();
             }
         }
-        items = newItems;
-        System.out.println("Cleared empty items");
+        EventLog.getInstance().emit(EventType.CART_EMPTY_LINES_CLEARED, EventLog.id(id));
     }
     
     public static class CartItem {
@@ -140,5 +207,15 @@ public class Cart {
             if (product == null) return 0;
             return price * quantity;
         }
+        
+        CartItem copy() {
+            CartItem copy = new CartItem();
+            copy.id = id;
+            copy.product = product;
+            copy.quantity = quantity;
+            copy.price = price;
+            copy.notes = notes;
+            return copy;
+        }
     }
 }
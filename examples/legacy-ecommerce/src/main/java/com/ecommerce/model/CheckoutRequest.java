@@ -0,0 +1,18 @@
+package com.ecommerce.model;
+
+public class CheckoutRequest {
+    
+    public Long userId;
+    public Long cartId;
+    public String shippingAddress;
+    public String billingAddress;
+    
+    public CheckoutRequest() {
+    }
+    
+    public CheckoutRequest(Long userId, Long cartId, String shippingAddress) {
+        this.userId = userId;
+        this.cartId = cartId;
+        this.shippingAddress = shippingAddress;
+    }
+}
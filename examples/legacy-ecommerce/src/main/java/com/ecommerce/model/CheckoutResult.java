@@ -0,0 +1,19 @@
+package com.ecommerce.model;
+
+public class CheckoutResult {
+    
+    public Long cartId;
+    public Order order;
+    public String error;
+    
+    public CheckoutResult() {
+    }
+    
+    public CheckoutResult(Long cartId) {
+        this.cartId = cartId;
+    }
+    
+    public boolean isSuccess() {
+        return order != null;
+    }
+}
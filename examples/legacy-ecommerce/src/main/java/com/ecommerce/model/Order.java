@@ -1,5 +1,10 @@
 package com.ecommerce.model;
 
+import com.ecommerce.events.EventLog;
+import com.ecommerce.events.EventType;
+import com.ecommerce.pricing.PricingEngine;
+import com.ecommerce.pricing.PricingPlan;
+
 import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
@@ -10,8 +15,7 @@ public class Order {
     public Long userId;
     public ArrayList items;
     public double totalAmount;
-    public String status;
-    public String orderStatus;
+    public OrderStatus status;
     public String shippingAddress;
     public String billingAddress;
     public Date orderDate;
@@ -21,71 +25,103 @@ public class Order {
     
     public Order() {
         this.orderDate = new Date();
-        this.status = "PENDING";
-        this.orderStatus = "NEW";
+        this.status = OrderStatus.PENDING;
         items = new ArrayList();
     }
     
     public Order(Long userId, Cart cart, String shippingAddress) {
+        this(userId, cart.getItems(), shippingAddress);
+    }
+    
+    public Order(Long userId, List<Cart.CartItem> lines, String shippingAddress) {
         this.userId = userId;
         this.shippingAddress = shippingAddress;
         this.orderDate = new Date();
-        this.status = "PENDING";
-        
-        this.totalAmount = cart.getTotal();
+        this.status = OrderStatus.PENDING;
         
         this.items = new ArrayList();
         int count = 0;
-        for (Object obj : cart.items) {
-            Cart.CartItem cartItem = (Cart.CartItem) obj;
+        // unit rules are settled here: order lines keep the unit price charged
+        PricingPlan plan = PricingEngine.getInstance().getPlan();
+        long subtotal = 0;
+        for (Cart.CartItem cartItem : lines) {
             OrderItem orderItem = new OrderItem();
+            long unitCents = plan.unitPrice(PricingPlan.toCents(cartItem.price), cartItem.product.category);
             
             orderItem.productId = cartItem.product.id;
             orderItem.productName = cartItem.product.name;
             orderItem.quantity = cartItem.quantity;
-            orderItem.price = cartItem.price;
+            orderItem.price = unitCents / 100.0;
             
             this.items.add(orderItem);
             count = count + cartItem.quantity;
+            subtotal += plan.lineTotal(unitCents, cartItem.quantity);
         }
+        this.totalAmount = plan.orderTotal(subtotal) / 100.0;
         this.totalItems = count;
         
         estimatedDelivery = new Date(System.currentTimeMillis() + 5 * 24 * 60 * 60 * 1000);
         
-        System.out.println("Order created for user: " + userId);
+        EventLog.getInstance().emit(EventType.ORDER_CREATED, EventLog.id(userId), count);
+    }
+    
+    /**
+     * A detached copy of the order, for callers that adjust what they
+     * return. Taken under the order's monitor, which status changes hold.
+     */
+    public synchronized Order copy() {
+        Order copy = new Order();
+        copy.id = id;
+        copy.userId = userId;
+        ArrayList<Object> lines = new ArrayList<>(items.size());
+        for (Object item : items) {
+            lines.add(item);
+        }
+        copy.items = lines;
+        copy.totalAmount = totalAmount;
+        copy.status = status;
+        copy.shippingAddress = shippingAddress;
+        copy.billingAddress = billingAddress;
+        copy.orderDate = orderDate;
+        copy.deliveryDate = deliveryDate;
+        copy.estimatedDelivery = estimatedDelivery;
+        copy.totalItems = totalItems;
+        return copy;
     }
     
-    public void updateStatus(String newStatus) {
+    /**
+     * Moves the order to the given status if its current one allows it.
+     */
+    public boolean updateStatus(OrderStatus newStatus) {
+        if (!status.canBecome(newStatus)) {
+            return false;
+        }
         this.status = newStatus;
 
-        if (newStatus.equals("SHIPPED")) {
+        if (newStatus == OrderStatus.SHIPPED) {
             deliveryDate = new Date();
         }
+        return true;
     }
     
     public boolean canBeCancelled() {
-        return "PENDING".equals(status) ||
-               "pending".equalsIgnoreCase(status) || 
-               "NEW".equals(orderStatus) ||
-               status == "CONFIRMED";
+        return status != OrderStatus.CANCELLED && status.canBecome(OrderStatus.CANCELLED);
     }
     
     public double recalculateTotal() {
-        double sum = 0;
+        PricingPlan plan = PricingEngine.getInstance().getPlan();
+        long sum = 0;
         for (int i = 0; i < items.size(); i++) {
             OrderItem item = (OrderItem) items.get(i);
-            sum += item.price * item.quantity;
-            
-            if (item.price > 50) {
-                sum += 5.99;
-            }
+            sum += plan.lineTotal(PricingPlan.toCents(item.price), item.quantity);
         }
+        long total = plan.orderTotal(sum);
         
-        if (sum != totalAmount) {
-            System.out.println("Warning: total mismatch!");
+        if (total != PricingPlan.toCents(totalAmount)) {
+            EventLog.getInstance().emit(EventType.ORDER_TOTAL_MISMATCH, EventLog.id(id));
         }
         
-        return sum;
+        return total / 100.0;
     }
     
     public boolean validate() {
@@ -96,12 +132,12 @@ public class Order {
     }
     
     public String getFormattedStatus() {
-        if (status.equals("PENDING") &&
+        if (status == OrderStatus.PENDING &&
             orderDate.before(new Date(System.currentTimeMillis() - 7 * 24 * 60 * 60 * 1000))) {
-            this.status = "EXPIRED";
+            return OrderStatus.EXPIRED.name();
         }
         
-        return status.toUpperCase();
+        return status.name();
     }
     
     public static class OrderItem {
@@ -119,11 +155,8 @@ public class Order {
         }
         
         public double calculateItemTotal() {
-            double base = price * quantity;
-            if (quantity > 5) {
-                base = base * 0.9;
-            }
-            return base;
+            PricingPlan plan = PricingEngine.getInstance().getPlan();
+            return plan.lineTotal(PricingPlan.toCents(price), quantity) / 100.0;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.ecommerce.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Where an order is in its lifecycle. Statuses are journaled and sent by
+ * name; {@link #canBecome} lists the changes an order may go through.
+ */
+public enum OrderStatus {
+    
+    PENDING,
+    PENDING_STOCK,
+    VIEWED,
+    PRIORITY,
+    CONFIRMED,
+    SHIPPED,
+    DELIVERED,
+    CANCELLED,
+    EXPIRED;
+    
+    private Set<OrderStatus> next = Collections.emptySet();
+    
+    static {
+        allow(PENDING, PENDING_STOCK, VIEWED, PRIORITY, CONFIRMED, SHIPPED, CANCELLED, EXPIRED);
+        allow(PENDING_STOCK, PENDING, CONFIRMED, CANCELLED, EXPIRED);
+        allow(VIEWED, PRIORITY, CONFIRMED, SHIPPED, CANCELLED, EXPIRED);
+        allow(PRIORITY, VIEWED, CONFIRMED, SHIPPED, CANCELLED);
+        allow(CONFIRMED, PRIORITY, SHIPPED, CANCELLED);
+        allow(SHIPPED, DELIVERED);
+    }
+    
+    private static void allow(OrderStatus from, OrderStatus... to) {
+        from.next = EnumSet.of(to[0], to);
+    }
+    
+    /**
+     * Whether an order in this status may move to the given one. Staying in
+     * the same status is always allowed.
+     */
+    public boolean canBecome(OrderStatus status) {
+        return status == this || next.contains(status);
+    }
+    
+    public boolean isFinal() {
+        return next.isEmpty();
+    }
+    
+    /**
+     * The status with the given name, ignoring case, or null when there is
+     * none. "CANCEL" is read as {@link #CANCELLED}, as older clients sent it.
+     */
+    public static OrderStatus parse(String name) {
+        if (name == null) {
+            return null;
+        }
+        String upper = name.trim().toUpperCase(Locale.ROOT);
+        if (upper.equals("CANCEL")) {
+            return CANCELLED;
+        }
+        for (OrderStatus status : values()) {
+            if (status.name().equals(upper)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
@@ -1,56 +1,165 @@
 package com.ecommerce.model;
 
+import com.ecommerce.events.EventLog;
+import com.ecommerce.events.EventType;
+import com.ecommerce.pricing.PricingEngine;
+import com.ecommerce.pricing.PricingPlan;
+
 import java.util.Date;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+/**
+ * A catalog entry. Once saved to the repository a product is a published
+ * value and is never modified in place: changes are made to a {@link #copy()}
+ * that replaces it. The one exception is stock, an inventory counter that
+ * every copy of the product shares, so a reservation taken against an older
+ * copy still counts after the product has been replaced.
+ */
 public class Product {
     
     public Long id;
     public String name;
     public String description;
     public double price;
-    public int stock;
     public String category;
     public Date createdAt;
     private boolean active;
     public String status;
     
+    private final StockLevel stockLevel;
+    private volatile Serialized serialized;
+    
+    private static final class Counter extends AtomicInteger implements StockLevel {
+        
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        public void add(int delta) {
+            addAndGet(delta);
+        }
+    }
+    
+    private static final class Serialized {
+        final int stock;
+        final byte[] bytes;
+        
+        Serialized(int stock, byte[] bytes) {
+            this.stock = stock;
+            this.bytes = bytes;
+        }
+    }
+    
     public Product() {
+        this.stockLevel = new Counter();
+    }
+    
+    private Product(StockLevel stockLevel) {
+        this.stockLevel = stockLevel;
     }
     
     public Product(Long id, String name, double price) {
+        this();
         this.id = id;
         this.name = name;
         this.price = price;
     }
     
     public Product(String name, double price, int stock) {
+        this();
         this.name = name;
         this.price = price;
-        this.stock = stock;
+        this.stockLevel.set(stock);
         this.active = true;
         this.status = "ACTIVE";
     }
     
+    private Product(Product source) {
+        this(source.stockLevel);
+        this.id = source.id;
+        this.name = source.name;
+        this.description = source.description;
+        this.price = source.price;
+        this.category = source.category;
+        this.createdAt = source.createdAt;
+        this.active = source.active;
+        this.status = source.status;
+    }
+    
+    /**
+     * Returns an empty product whose stock is kept in the given place, for
+     * stores that hold stock outside the product.
+     */
+    public static Product backedBy(StockLevel stockLevel) {
+        return new Product(stockLevel);
+    }
+    
+    /**
+     * Returns an unpublished copy to modify, sharing this product's stock.
+     */
+    public Product copy() {
+        return new Product(this);
+    }
+    
+    public StockLevel stockLevel() {
+        return stockLevel;
+    }
+    
     public void setPrice(double price) {
         this.price = price;
     }
     
+    public int getStock() {
+        return stockLevel.get();
+    }
+    
     public void setStock(int stock) {
-        this.stock = stock;
+        stockLevel.set(stock);
     }
     
     public boolean isActive() {
         return active;
     }
     
-    public boolean checkAndDecrementStock(int qty) {
-        if (stock >= qty) {
-            stock = stock - qty;
-            return true;
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+    
+    public boolean tryTakeStock(int qty) {
+        while (true) {
+            int current = stockLevel.get();
+            if (current < qty) {
+                return false;
+            }
+            if (stockLevel.compareAndSet(current, current - qty)) {
+                return true;
+            }
         }
-        return false;
+    }
+    
+    public void addStock(int qty) {
+        stockLevel.add(qty);
+    }
+    
+    /**
+     * Returns this product serialized by the given function, reusing the
+     * bytes from the last call while the stock is unchanged; nothing else
+     * about a published product can change. The cached form lives on the
+     * product, so it goes away with it.
+     */
+    public byte[] serializedWith(Function<Product, byte[]> serializer) {
+        int stock = stockLevel.get();
+        Serialized cached = serialized;
+        if (cached != null && cached.stock == stock) {
+            return cached.bytes;
+        }
+        byte[] bytes = serializer.apply(this);
+        if (stockLevel.get() == stock) {
+            serialized = new Serialized(stock, bytes);
+        }
+        return bytes;
     }
     
     public String getDisplayPrice() {
@@ -64,24 +173,20 @@ public class Product {
     }
     
     public boolean isAvailable() {
-        boolean avail = active && stock > 0;
-        System.out.println("Checking availability for " + name + ": " + avail);
+        boolean avail = active && stockLevel.get() > 0;
+        EventLog.getInstance().emit(EventType.PRODUCT_AVAILABILITY_CHECKED, EventLog.id(id), avail ? 1 : 0, name);
         return avail;
     }
     
     public double calculateDiscountedPrice(double discountPercent) {
         double discounted = price - (price * discountPercent / 100);
-        if (category.equals("Electronics")) {
-            discounted = discounted * 0.95;
-        }
-        return discounted;
+        PricingPlan plan = PricingEngine.getInstance().getPlan();
+        return plan.unitPrice(PricingPlan.toCents(discounted), category) / 100.0;
     }
     
-    public void applySeasonalDiscount() {
-        Date now = new Date();
-        if (now.getMonth() == 11) {
-            this.price = this.price * 0.8;
-        }
+    public double seasonalPrice() {
+        PricingPlan plan = PricingEngine.getInstance().getPlan();
+        return plan.seasonalUnitPrice(PricingPlan.toCents(price)) / 100.0;
     }
     
     public void someOldMethod() {
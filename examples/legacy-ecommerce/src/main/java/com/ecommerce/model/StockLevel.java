@@ -0,0 +1,16 @@
+package com.ecommerce.model;
+
+/**
+ * Where a product's stock count is kept. Every copy of a product shares the
+ * same one, so stock taken through any copy is seen by all of them.
+ */
+public interface StockLevel {
+    
+    int get();
+    
+    void set(int stock);
+    
+    boolean compareAndSet(int expected, int stock);
+    
+    void add(int delta);
+}
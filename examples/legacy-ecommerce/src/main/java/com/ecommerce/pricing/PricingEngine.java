@@ -0,0 +1,69 @@
+package com.ecommerce.pricing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the current {@link PricingPlan}. Rules are read from
+ * {@code pricing-rules.conf} on the classpath and compiled once; a new rule
+ * set can be swapped in with {@link #load(List)}.
+ */
+public class PricingEngine {
+    
+    private static final String RULES_RESOURCE = "/pricing-rules.conf";
+    
+    private volatile PricingPlan plan;
+    private volatile List<PricingRule> rules;
+    
+    private PricingEngine() {
+        load(readRules(PricingEngine.class.getResourceAsStream(RULES_RESOURCE)));
+    }
+    
+    public static PricingEngine getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private static class Holder {
+        static final PricingEngine INSTANCE = new PricingEngine();
+    }
+    
+    public PricingPlan getPlan() {
+        return plan;
+    }
+    
+    public List<PricingRule> getRules() {
+        return rules;
+    }
+    
+    public void load(List<PricingRule> newRules) {
+        PricingPlan compiled = PricingPlan.compile(newRules);
+        this.rules = Collections.unmodifiableList(new ArrayList<>(newRules));
+        this.plan = compiled;
+    }
+    
+    static List<PricingRule> readRules(InputStream in) {
+        List<PricingRule> rules = new ArrayList<>();
+        if (in == null) {
+            return rules;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    rules.add(PricingRule.parse(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read pricing rules", e);
+        }
+        return rules;
+    }
+}
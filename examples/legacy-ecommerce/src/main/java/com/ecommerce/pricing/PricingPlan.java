@@ -0,0 +1,156 @@
+package com.ecommerce.pricing;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Pricing rules compiled into flat arrays, one set per scope. All amounts
+ * are integer cents; evaluating a line or an order allocates nothing.
+ */
+public class PricingPlan {
+    
+    private static final int ALWAYS = PricingRule.Condition.ALWAYS.ordinal();
+    private static final int CATEGORY = PricingRule.Condition.CATEGORY.ordinal();
+    private static final int MONTH = PricingRule.Condition.MONTH.ordinal();
+    private static final int QUANTITY_OVER = PricingRule.Condition.QUANTITY_OVER.ordinal();
+    private static final int UNIT_PRICE_OVER = PricingRule.Condition.UNIT_PRICE_OVER.ordinal();
+    private static final int SUBTOTAL_OVER = PricingRule.Condition.SUBTOTAL_OVER.ordinal();
+    private static final long MONTH_RECHECK_MILLIS = 60_000;
+    
+    private final Stage unit;
+    private final Stage line;
+    private final Stage order;
+    
+    private volatile int month;
+    private volatile long monthCheckedAt;
+    
+    private PricingPlan(Stage unit, Stage line, Stage order) {
+        this.unit = unit;
+        this.line = line;
+        this.order = order;
+    }
+    
+    public static PricingPlan compile(List<PricingRule> rules) {
+        return new PricingPlan(
+                Stage.compile(rules, PricingRule.Scope.UNIT),
+                Stage.compile(rules, PricingRule.Scope.LINE),
+                Stage.compile(rules, PricingRule.Scope.ORDER));
+    }
+    
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+    
+    public long unitPrice(long unitCents, String category) {
+        return unit.apply(unitCents, unitCents, 0, category, currentMonth(), false);
+    }
+    
+    public long seasonalUnitPrice(long unitCents) {
+        return unit.apply(unitCents, unitCents, 0, null, currentMonth(), true);
+    }
+    
+    public long lineTotal(long unitCents, int quantity) {
+        return line.apply(unitCents * quantity, unitCents, quantity, null, 0, false);
+    }
+    
+    public long orderTotal(long subtotalCents) {
+        return order.apply(subtotalCents, 0, 0, null, 0, false);
+    }
+    
+    /**
+     * The month seasonal rules are evaluated for, rechecked once a minute.
+     */
+    public int currentMonth() {
+        long now = System.currentTimeMillis();
+        if (now - monthCheckedAt > MONTH_RECHECK_MILLIS) {
+            month = LocalDate.now().getMonthValue();
+            monthCheckedAt = now;
+        }
+        return month;
+    }
+    
+    private static final class Stage {
+        final int[] conditions;
+        final long[] thresholds;
+        final String[] categories;
+        final boolean[] surcharges;
+        final long[] amounts;
+        
+        private Stage(int size) {
+            conditions = new int[size];
+            thresholds = new long[size];
+            categories = new String[size];
+            surcharges = new boolean[size];
+            amounts = new long[size];
+        }
+        
+        static Stage compile(List<PricingRule> rules, PricingRule.Scope scope) {
+            int size = 0;
+            for (PricingRule rule : rules) {
+                if (rule.scope == scope) {
+                    size++;
+                }
+            }
+            
+            Stage stage = new Stage(size);
+            int i = 0;
+            for (PricingRule rule : rules) {
+                if (rule.scope != scope) {
+                    continue;
+                }
+                stage.conditions[i] = rule.condition.ordinal();
+                switch (rule.condition) {
+                    case CATEGORY:
+                        stage.categories[i] = rule.argument;
+                        break;
+                    case MONTH:
+                    case QUANTITY_OVER:
+                        stage.thresholds[i] = Long.parseLong(rule.argument);
+                        break;
+                    case UNIT_PRICE_OVER:
+                    case SUBTOTAL_OVER:
+                        stage.thresholds[i] = cents(new BigDecimal(rule.argument));
+                        break;
+                    default:
+                        break;
+                }
+                stage.surcharges[i] = rule.adjustment == PricingRule.Adjustment.SURCHARGE;
+                // percentages are kept in basis points
+                stage.amounts[i] = stage.surcharges[i]
+                        ? cents(rule.amount)
+                        : rule.amount.movePointRight(2).longValueExact();
+                i++;
+            }
+            return stage;
+        }
+        
+        long apply(long value, long unitCents, int quantity, String category, int month, boolean seasonalOnly) {
+            for (int i = 0; i < conditions.length; i++) {
+                int condition = conditions[i];
+                if (seasonalOnly && condition != MONTH) {
+                    continue;
+                }
+                boolean matches = condition == ALWAYS
+                        || (condition == CATEGORY && categories[i].equals(category))
+                        || (condition == MONTH && thresholds[i] == month)
+                        || (condition == QUANTITY_OVER && quantity > thresholds[i])
+                        || (condition == UNIT_PRICE_OVER && unitCents > thresholds[i])
+                        || (condition == SUBTOTAL_OVER && value > thresholds[i]);
+                if (!matches) {
+                    continue;
+                }
+                if (surcharges[i]) {
+                    value += amounts[i];
+                } else {
+                    value = (value * (10_000 - amounts[i]) + 5_000) / 10_000;
+                }
+            }
+            return value;
+        }
+        
+        private static long cents(BigDecimal amount) {
+            return amount.movePointRight(2).longValueExact();
+        }
+    }
+}
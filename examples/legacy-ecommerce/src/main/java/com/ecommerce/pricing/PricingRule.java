@@ -0,0 +1,53 @@
+package com.ecommerce.pricing;
+
+import java.math.BigDecimal;
+
+/**
+ * One declarative pricing rule, as read from {@code pricing-rules.conf}:
+ * {@code <scope> <condition> <argument> <adjustment> <amount>}.
+ */
+public class PricingRule {
+    
+    public enum Scope { UNIT, LINE, ORDER }
+    
+    public enum Condition { ALWAYS, CATEGORY, MONTH, QUANTITY_OVER, UNIT_PRICE_OVER, SUBTOTAL_OVER }
+    
+    public enum Adjustment { PERCENT_OFF, SURCHARGE }
+    
+    public final Scope scope;
+    public final Condition condition;
+    public final String argument;
+    public final Adjustment adjustment;
+    public final BigDecimal amount;
+    
+    public PricingRule(Scope scope, Condition condition, String argument,
+                       Adjustment adjustment, BigDecimal amount) {
+        this.scope = scope;
+        this.condition = condition;
+        this.argument = argument;
+        this.adjustment = adjustment;
+        this.amount = amount;
+    }
+    
+    public static PricingRule parse(String line) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Expected 5 columns in pricing rule: " + line);
+        }
+        try {
+            return new PricingRule(
+                    Scope.valueOf(parts[0]),
+                    Condition.valueOf(parts[1]),
+                    parts[2],
+                    Adjustment.valueOf(parts[3]),
+                    new BigDecimal(parts[4]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid pricing rule: " + line, e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return scope + " " + condition + " " + argument + " " + adjustment + " " + amount;
+    }
+}
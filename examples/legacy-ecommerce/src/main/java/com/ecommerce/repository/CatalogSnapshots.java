@@ -0,0 +1,238 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.journal.Journal;
+import com.ecommerce.journal.Records;
+import com.ecommerce.model.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshots of the product catalog.
+ *
+ * A snapshot is {@code [magic][journal position]} followed by products in
+ * the journal's record encoding, each prefixed by a 1 byte and the whole
+ * terminated by a 0 byte. It is written to a temporary file, forced and
+ * atomically renamed over the previous one, and loaded through a read-only
+ * memory map.
+ *
+ * With the journal on, a snapshot is the previous snapshot with the product
+ * records up to a flushed record boundary folded in, so it is exact and never
+ * touches the live maps; startup loads it and replays only the records after
+ * its position. Without the journal the live catalog is iterated, which is
+ * weakly consistent but never blocks writers.
+ */
+class CatalogSnapshots {
+    
+    private static final int MAGIC = 0x45435331;
+    
+    private final Path file;
+    private final Path temporary;
+    private final Journal journal;
+    
+    private ScheduledExecutorService scheduler;
+    private Thread shutdownHook;
+    private ProductRepository repository;
+    
+    CatalogSnapshots(Path file, Journal journal) {
+        this.file = file;
+        this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        this.journal = journal;
+    }
+    
+    /**
+     * Snapshots configured with the system property
+     * {@code ecommerce.snapshot.dir}, or null when snapshots are off.
+     */
+    static CatalogSnapshots fromSystemProperties(Journal journal) {
+        String dir = System.getProperty("ecommerce.snapshot.dir");
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        return new CatalogSnapshots(Paths.get(dir, "catalog.snapshot"), journal);
+    }
+    
+    /**
+     * Feeds the snapshot's products to the sink and returns the journal
+     * position it covers, or -1 when there is no usable snapshot.
+     */
+    long load(Consumer<Product> sink) {
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        try {
+            long position = read(file, sink);
+            if (journal != null && position > journal.getReplayEnd()) {
+                System.err.println("Ignoring catalog snapshot " + file + ": it is ahead of the journal");
+                return -1;
+            }
+            return position;
+        } catch (IOException e) {
+            System.err.println("Ignoring catalog snapshot " + file + ": " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Writes a snapshot every {@code ecommerce.snapshot.interval-seconds}
+     * (default 300) on a daemon thread, and at shutdown when there is no
+     * journal to fall back on. Stopped by {@link #close}.
+     */
+    synchronized void start(ProductRepository repository) {
+        long interval = Long.getLong("ecommerce.snapshot.interval-seconds", 300);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                write(repository);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not write catalog snapshot " + file + ": " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        if (journal == null) {
+            this.repository = repository;
+            shutdownHook = new Thread(this::writeFinal, "catalog-snapshot-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+    
+    /**
+     * Stops periodic snapshots and takes the final one the shutdown hook
+     * would have written.
+     */
+    synchronized void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler = null;
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down: the hook writes the snapshot
+                return;
+            } finally {
+                shutdownHook = null;
+            }
+            writeFinal();
+        }
+    }
+    
+    private void writeFinal() {
+        try {
+            write(repository);
+        } catch (IOException e) {
+            System.err.println("Could not write catalog snapshot " + file + ": " + e.getMessage());
+        }
+    }
+    
+    synchronized void write(ProductRepository repository) throws IOException {
+        if (journal == null) {
+            writeFile(0, repository.iterateById(null));
+            return;
+        }
+        Map<Long, Product> catalog = new TreeMap<>();
+        long from = Files.exists(file) ? read(file, product -> catalog.put(product.id, product)) : 0;
+        long to = journal.getFlushedPosition();
+        if (to == from && Files.exists(file)) {
+            return;
+        }
+        journal.replay(from, to, (type, in) -> {
+            switch (type) {
+                case Records.PRODUCT_SAVED:
+                    Product product = Records.readProduct(in);
+                    catalog.put(product.id, product);
+                    break;
+                case Records.PRODUCT_DELETED:
+                    catalog.remove(in.readLong());
+                    break;
+                case Records.STOCK_CHANGED:
+                    Product stocked = catalog.get(in.readLong());
+                    int delta = in.readInt();
+                    if (stocked != null) {
+                        stocked.addStock(delta);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        });
+        writeFile(to, catalog.values());
+    }
+    
+    private void writeFile(long position, Iterable<Product> products) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(position);
+            for (Product product : products) {
+                out.writeByte(1);
+                Records.writeProduct(out, product);
+            }
+            out.writeByte(0);
+            out.flush();
+            stream.getChannel().force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static long read(Path path, Consumer<Product> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new BufferInputStream(buffer));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a catalog snapshot");
+            }
+            long position = in.readLong();
+            while (in.readByte() != 0) {
+                sink.accept(Records.readProduct(in));
+            }
+            return position;
+        }
+    }
+    
+    private static class BufferInputStream extends InputStream {
+        
+        private final ByteBuffer buffer;
+        
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+class CategoryIndex implements ProductIndex {
+    
+    private final Map<String, Set<Long>> idsByCategory = new ConcurrentHashMap<>();
+    private final Map<Long, String> categoryById = new ConcurrentHashMap<>();
+    
+    @Override
+    public void update(Product product) {
+        String previous = product.category == null
+                ? categoryById.remove(product.id)
+                : categoryById.put(product.id, product.category);
+        if (Objects.equals(previous, product.category)) {
+            return;
+        }
+        if (previous != null) {
+            unlink(previous, product.id);
+        }
+        if (product.category != null) {
+            idsByCategory.compute(product.category, (category, ids) -> {
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                }
+                ids.add(product.id);
+                return ids;
+            });
+        }
+    }
+    
+    @Override
+    public void remove(Long productId) {
+        String previous = categoryById.remove(productId);
+        if (previous != null) {
+            unlink(previous, productId);
+        }
+    }
+    
+    private void unlink(String category, Long productId) {
+        idsByCategory.computeIfPresent(category, (key, ids) -> {
+            ids.remove(productId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+    
+    Set<Long> idsIn(String category) {
+        return idsByCategory.getOrDefault(category, Collections.emptySet());
+    }
+    
+    int count(String category) {
+        return idsIn(category).size();
+    }
+    
+    Map<String, Integer> counts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        idsByCategory.forEach((category, ids) -> counts.put(category, ids.size()));
+        return counts;
+    }
+}
@@ -0,0 +1,462 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import com.ecommerce.model.StockLevel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Products stored column by column in chunked primitive arrays, for catalogs
+ * large enough that one object graph per product costs too much heap and GC
+ * time. Categories and statuses are dictionary-encoded, ids map to rows
+ * through an open-addressing table of primitives, and a {@link Product} is
+ * only built when one is read. Its stock is the column itself, so stock
+ * taken through a view lands in the store. As every read builds a new
+ * product, the JSON that {@link Product#serializedWith} keeps on a product
+ * is not reused across reads in this mode; whole responses are still cached
+ * by the controllers.
+ *
+ * Writes take a write lock; reads are optimistic and retry under a read lock
+ * if a write overlapped them. A removed product's row goes to the next new
+ * product. Each stock cell holds the row's generation next to the count, so
+ * a view of the removed product reads no stock and cannot change the new
+ * one's.
+ */
+class ColumnarProductStore implements ProductStore {
+    
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final byte LIVE = 1;
+    private static final byte ACTIVE = 2;
+    
+    private final StampedLock lock = new StampedLock();
+    private final RowIndex rowsById = new RowIndex();
+    private final Dictionary categories = new Dictionary();
+    private final Dictionary statuses = new Dictionary();
+    
+    private long[][] ids = new long[0][];
+    private double[][] prices = new double[0][];
+    private AtomicLongArray[] stock = new AtomicLongArray[0];
+    private int[][] categoryCodes = new int[0][];
+    private int[][] statusCodes = new int[0][];
+    private long[][] createdAt = new long[0][];
+    private byte[][] flags = new byte[0][];
+    private String[][] names = new String[0][];
+    private String[][] descriptions = new String[0][];
+    private int rowCount;
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    
+    @Override
+    public Product get(Long id) {
+        return read(() -> {
+            int row = rowsById.get(id);
+            return row < 0 ? null : materialize(row);
+        });
+    }
+    
+    @Override
+    public Product compute(Long id, BiFunction<Long, Product, Product> remapping) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rowsById.get(id);
+            Product next = remapping.apply(id, row < 0 ? null : materialize(row));
+            if (next == null) {
+                if (row >= 0) {
+                    rowsById.remove(id);
+                    clear(row);
+                }
+                return null;
+            }
+            if (row < 0) {
+                row = freeCount > 0 ? freeRows[--freeCount] : appendRow();
+                rowsById.put(id, row);
+            }
+            write(row, id, next);
+            return next;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // stock changes share the read lock, which keeps compute out while they run their callback
+    @Override
+    public boolean tryTakeStock(Long id, int quantity, Runnable taken) {
+        long stamp = lock.readLock();
+        try {
+            ColumnStock level = stockOf(id);
+            if (level == null) {
+                return false;
+            }
+            while (true) {
+                int current = level.get();
+                if (current < quantity) {
+                    return false;
+                }
+                if (level.compareAndSet(current, current - quantity)) {
+                    taken.run();
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public boolean addStock(Long id, int quantity, Runnable added) {
+        long stamp = lock.readLock();
+        try {
+            ColumnStock level = stockOf(id);
+            if (level == null) {
+                return false;
+            }
+            level.add(quantity);
+            added.run();
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return read(() -> rowsById.size == 0);
+    }
+    
+    @Override
+    public List<Product> values() {
+        long stamp = lock.readLock();
+        try {
+            List<Product> values = new ArrayList<>(rowsById.size);
+            for (int row = 0; row < rowCount; row++) {
+                if ((flags[row >>> CHUNK_BITS][row & CHUNK_MASK] & LIVE) != 0) {
+                    values.add(materialize(row));
+                }
+            }
+            return values;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    private ColumnStock stockOf(Long id) {
+        int row = rowsById.get(id);
+        return row < 0 ? null : view(row);
+    }
+    
+    private ColumnStock view(int row) {
+        AtomicLongArray chunk = stock[row >>> CHUNK_BITS];
+        int offset = row & CHUNK_MASK;
+        return new ColumnStock(chunk, offset, ColumnStock.generation(chunk.get(offset)));
+    }
+    
+    /**
+     * Rows taken so far, live or waiting to be reused.
+     */
+    int allocatedRows() {
+        return read(() -> rowCount);
+    }
+    
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T value = reader.get();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // columns seen half-written by an overlapping write; read again under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    private Product materialize(int row) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        Product product = Product.backedBy(view(row));
+        product.id = ids[chunk][offset];
+        product.name = names[chunk][offset];
+        product.description = descriptions[chunk][offset];
+        product.price = prices[chunk][offset];
+        product.category = categories.value(categoryCodes[chunk][offset]);
+        long created = createdAt[chunk][offset];
+        product.createdAt = created == NO_DATE ? null : new Date(created);
+        product.setActive((flags[chunk][offset] & ACTIVE) != 0);
+        product.status = statuses.value(statusCodes[chunk][offset]);
+        return product;
+    }
+    
+    private void write(int row, Long id, Product product) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        ids[chunk][offset] = id;
+        names[chunk][offset] = product.name;
+        descriptions[chunk][offset] = product.description;
+        prices[chunk][offset] = product.price;
+        categoryCodes[chunk][offset] = categories.code(product.category);
+        createdAt[chunk][offset] = product.createdAt == null ? NO_DATE : product.createdAt.getTime();
+        flags[chunk][offset] = (byte) (LIVE | (product.isActive() ? ACTIVE : 0));
+        statusCodes[chunk][offset] = statuses.code(product.status);
+        
+        // a copy of a view of this row already shares the cell; anything else brings its own count
+        int generation = ColumnStock.generation(stock[chunk].get(offset));
+        StockLevel level = product.stockLevel();
+        if (!(level instanceof ColumnStock) || !((ColumnStock) level).isAt(stock[chunk], offset, generation)) {
+            stock[chunk].set(offset, ColumnStock.pack(generation, product.getStock()));
+        }
+    }
+    
+    private void clear(int row) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        flags[chunk][offset] = 0;
+        names[chunk][offset] = null;
+        descriptions[chunk][offset] = null;
+        int generation = ColumnStock.generation(stock[chunk].get(offset));
+        stock[chunk].set(offset, ColumnStock.pack(generation + 1, 0));
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+    }
+    
+    private int appendRow() {
+        if (rowCount == ids.length * CHUNK_SIZE) {
+            int chunks = ids.length + 1;
+            ids = Arrays.copyOf(ids, chunks);
+            prices = Arrays.copyOf(prices, chunks);
+            stock = Arrays.copyOf(stock, chunks);
+            categoryCodes = Arrays.copyOf(categoryCodes, chunks);
+            statusCodes = Arrays.copyOf(statusCodes, chunks);
+            createdAt = Arrays.copyOf(createdAt, chunks);
+            flags = Arrays.copyOf(flags, chunks);
+            names = Arrays.copyOf(names, chunks);
+            descriptions = Arrays.copyOf(descriptions, chunks);
+            
+            int chunk = chunks - 1;
+            ids[chunk] = new long[CHUNK_SIZE];
+            prices[chunk] = new double[CHUNK_SIZE];
+            stock[chunk] = new AtomicLongArray(CHUNK_SIZE);
+            categoryCodes[chunk] = new int[CHUNK_SIZE];
+            statusCodes[chunk] = new int[CHUNK_SIZE];
+            createdAt[chunk] = new long[CHUNK_SIZE];
+            flags[chunk] = new byte[CHUNK_SIZE];
+            names[chunk] = new String[CHUNK_SIZE];
+            descriptions[chunk] = new String[CHUNK_SIZE];
+        }
+        return rowCount++;
+    }
+    
+    /**
+     * A row's stock cell: the row's generation in the high half, the count in
+     * the low half. A view only acts while the generation it was made for is
+     * current.
+     */
+    private static final class ColumnStock implements StockLevel {
+        
+        private final AtomicLongArray chunk;
+        private final int offset;
+        private final int generation;
+        
+        ColumnStock(AtomicLongArray chunk, int offset, int generation) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.generation = generation;
+        }
+        
+        static long pack(int generation, int stock) {
+            return (long) generation << 32 | (stock & 0xFFFFFFFFL);
+        }
+        
+        static int generation(long cell) {
+            return (int) (cell >>> 32);
+        }
+        
+        boolean isAt(AtomicLongArray chunk, int offset, int generation) {
+            return this.chunk == chunk && this.offset == offset && this.generation == generation;
+        }
+        
+        @Override
+        public int get() {
+            long cell = chunk.get(offset);
+            return generation(cell) == generation ? (int) cell : 0;
+        }
+        
+        @Override
+        public void set(int stock) {
+            while (true) {
+                long cell = chunk.get(offset);
+                if (generation(cell) != generation || chunk.compareAndSet(offset, cell, pack(generation, stock))) {
+                    return;
+                }
+            }
+        }
+        
+        // a view of a removed product holds a constant zero
+        @Override
+        public boolean compareAndSet(int expected, int stock) {
+            if (chunk.compareAndSet(offset, pack(generation, expected), pack(generation, stock))) {
+                return true;
+            }
+            return expected == 0 && stock == 0 && generation(chunk.get(offset)) != generation;
+        }
+        
+        @Override
+        public void add(int delta) {
+            while (true) {
+                long cell = chunk.get(offset);
+                if (generation(cell) != generation
+                        || chunk.compareAndSet(offset, cell, pack(generation, (int) cell + delta))) {
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Small set of repeated strings stored once and referred to by code;
+     * -1 stands for null. Codes are only added under the write lock.
+     */
+    private static final class Dictionary {
+        
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[16];
+        
+        int code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                if (code == values.length) {
+                    values = Arrays.copyOf(values, code * 2);
+                }
+                values[code] = value;
+                codes.put(value, code);
+            }
+            return code;
+        }
+        
+        String value(int code) {
+            return code < 0 ? null : values[code];
+        }
+    }
+    
+    /**
+     * Product id to row, open addressing with linear probing over primitive
+     * arrays. Modified only under the write lock; lookups bound their probes
+     * so a read overlapping a write ends and is retried.
+     */
+    private static final class RowIndex {
+        
+        private static final long EMPTY = Long.MIN_VALUE;
+        
+        private long[] keys = emptyKeys(1024);
+        private int[] rows = new int[1024];
+        private int size;
+        
+        int get(long id) {
+            long[] keys = this.keys;
+            int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            for (int probes = 0; probes < keys.length; probes++) {
+                long key = keys[slot];
+                if (key == id) {
+                    return rows[slot];
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+        
+        void put(long id, int row) {
+            if (id == EMPTY) {
+                throw new IllegalArgumentException("Unsupported product id " + id);
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            insert(keys, rows, id, row);
+            size++;
+        }
+        
+        void remove(long id) {
+            int mask = keys.length - 1;
+            int gap = slot(id, mask);
+            while (keys[gap] != id) {
+                if (keys[gap] == EMPTY) {
+                    return;
+                }
+                gap = (gap + 1) & mask;
+            }
+            size--;
+            // shift later entries of the same run back so lookups never stop at the hole
+            for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    rows[gap] = rows[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = EMPTY;
+        }
+        
+        private void resize(int capacity) {
+            long[] newKeys = emptyKeys(capacity);
+            int[] newRows = new int[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    insert(newKeys, newRows, keys[i], rows[i]);
+                }
+            }
+            rows = newRows;
+            keys = newKeys;
+        }
+        
+        private static void insert(long[] keys, int[] rows, long id, int row) {
+            int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            rows[slot] = row;
+        }
+        
+        private static int slot(long id, int mask) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+        
+        private static long[] emptyKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+class HeapProductStore implements ProductStore {
+    
+    private final Map<Long, Product> products = new ConcurrentHashMap<>();
+    
+    @Override
+    public Product get(Long id) {
+        return products.get(id);
+    }
+    
+    @Override
+    public Product compute(Long id, BiFunction<Long, Product, Product> remapping) {
+        return products.compute(id, remapping);
+    }
+    
+    @Override
+    public boolean tryTakeStock(Long id, int quantity, Runnable taken) {
+        boolean[] done = new boolean[1];
+        products.computeIfPresent(id, (key, product) -> {
+            if (product.tryTakeStock(quantity)) {
+                taken.run();
+                done[0] = true;
+            }
+            return product;
+        });
+        return done[0];
+    }
+    
+    @Override
+    public boolean addStock(Long id, int quantity, Runnable added) {
+        boolean[] done = new boolean[1];
+        products.computeIfPresent(id, (key, product) -> {
+            product.addStock(quantity);
+            added.run();
+            done[0] = true;
+            return product;
+        });
+        return done[0];
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return products.isEmpty();
+    }
+    
+    @Override
+    public List<Product> values() {
+        return new ArrayList<>(products.values());
+    }
+}
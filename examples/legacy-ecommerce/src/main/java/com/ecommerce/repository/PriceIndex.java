@@ -0,0 +1,104 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Products ordered by price, across the catalog and within each category,
+ * so range and cheapest/most expensive queries walk only what they return.
+ * A changed price is added before the old one is removed; readers skip
+ * entries whose price no longer matches the product.
+ */
+class PriceIndex implements ProductIndex {
+    
+    static final class Entry implements Comparable<Entry> {
+        final double price;
+        final long id;
+        final String category;
+        
+        Entry(double price, long id, String category) {
+            this.price = price;
+            this.id = id;
+            this.category = category;
+        }
+        
+        @Override
+        public int compareTo(Entry other) {
+            int byPrice = Double.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Long.compare(id, other.id);
+        }
+    }
+    
+    private final NavigableSet<Entry> all = new ConcurrentSkipListSet<>();
+    private final Map<String, NavigableSet<Entry>> byCategory = new ConcurrentHashMap<>();
+    private final Map<Long, Entry> entriesById = new ConcurrentHashMap<>();
+    
+    @Override
+    public void update(Product product) {
+        Entry entry = new Entry(product.price, product.id, product.category);
+        Entry previous = entriesById.put(product.id, entry);
+        boolean samePrice = previous != null && previous.compareTo(entry) == 0;
+        if (samePrice && Objects.equals(previous.category, entry.category)) {
+            return;
+        }
+        
+        if (!samePrice) {
+            all.add(entry);
+        }
+        if (entry.category != null) {
+            byCategory.compute(entry.category, (category, entries) -> {
+                if (entries == null) {
+                    entries = new ConcurrentSkipListSet<>();
+                }
+                entries.add(entry);
+                return entries;
+            });
+        }
+        if (previous != null) {
+            if (!samePrice) {
+                all.remove(previous);
+            }
+            unlink(previous);
+        }
+    }
+    
+    @Override
+    public void remove(Long productId) {
+        Entry previous = entriesById.remove(productId);
+        if (previous != null) {
+            all.remove(previous);
+            unlink(previous);
+        }
+    }
+    
+    private void unlink(Entry entry) {
+        if (entry.category == null) {
+            return;
+        }
+        byCategory.computeIfPresent(entry.category, (category, entries) -> {
+            Entry current = entriesById.get(entry.id);
+            // the replacement compares equal when only the category changed
+            if (current == null || !category.equals(current.category) || current.compareTo(entry) != 0) {
+                entries.remove(entry);
+            }
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+    
+    NavigableSet<Entry> between(double min, double max) {
+        return all.subSet(new Entry(min, Long.MIN_VALUE, null), true, new Entry(max, Long.MAX_VALUE, null), true);
+    }
+    
+    NavigableSet<Entry> in(String category) {
+        if (category == null) {
+            return all;
+        }
+        return byCategory.getOrDefault(category, Collections.emptyNavigableSet());
+    }
+}
@@ -0,0 +1,15 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+/**
+ * Secondary index kept current by {@link ProductRepository}. Calls for a
+ * given product id are never concurrent: the repository makes them while
+ * holding that id's slot in the product map.
+ */
+interface ProductIndex {
+    
+    void update(Product product);
+    
+    void remove(Long productId);
+}
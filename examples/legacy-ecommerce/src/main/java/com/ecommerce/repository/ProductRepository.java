@@ -1,25 +1,72 @@
 package com.ecommerce.repository;
 
+import com.ecommerce.journal.Journal;
+import com.ecommerce.journal.Records;
 import com.ecommerce.model.Product;
+
+import java.io.DataInput;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class ProductRepository {
     
-    private static ProductRepository instance;
+    private final ProductStore products = ProductStore.fromSystemProperties();
+    private final NavigableSet<Long> orderedIds = new ConcurrentSkipListSet<>();
+    private final AtomicLong idGenerator = new AtomicLong(1);
+    private final AtomicLong version = new AtomicLong();
+    
+    private final CategoryIndex categoryIndex = new CategoryIndex();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final PriceIndex priceIndex = new PriceIndex();
+    private final List<ProductIndex> indexes = Arrays.asList(categoryIndex, searchIndex, priceIndex);
     
-    private Map<Long, Product> products = new HashMap<>();
-    private AtomicLong idGenerator = new AtomicLong(1);
+    private final Journal journal;
+    private final CatalogSnapshots snapshots;
     
     private ProductRepository() {
-        initializeData();
+        this(Journal.getInstance());
+    }
+    
+    ProductRepository(Journal journal) {
+        this(journal, CatalogSnapshots.fromSystemProperties(journal));
+    }
+    
+    ProductRepository(Journal journal, CatalogSnapshots snapshots) {
+        this.journal = journal;
+        this.snapshots = snapshots;
+        long snapshotPosition = snapshots != null ? snapshots.load(this::restore) : -1;
+        if (snapshotPosition < 0 && !products.isEmpty()) {
+            clear();
+        }
+        if (journal != null && !journal.isEmpty()) {
+            journal.replay(Math.max(snapshotPosition, 0), journal.getReplayEnd(), this::replay);
+        } else if (snapshotPosition < 0) {
+            initializeData();
+        }
+        if (snapshots != null) {
+            snapshots.start(this);
+        }
     }
     
     public static ProductRepository getInstance() {
-        if (instance == null) {
-            instance = new ProductRepository();
+        return Holder.INSTANCE;
+    }
+    
+    private static class Holder {
+        static final ProductRepository INSTANCE = new ProductRepository();
+    }
+    
+    /**
+     * Stops background catalog snapshots; without a journal a last snapshot
+     * is written first.
+     */
+    public void close() {
+        if (snapshots != null) {
+            snapshots.close();
         }
-        return instance;
     }
     
     private void initializeData() {
@@ -36,11 +83,85 @@ public class ProductRepository {
         product.name = name;
         product.description = description;
         product.price = price;
-        product.stock = stock;
+        product.setStock(stock);
         product.category = category;
-        product.active = true;
+        product.setActive(true);
         product.createdAt = new Date();
-        products.put(product.id, product);
+        store(product, true);
+    }
+    
+    private void store(Product product, boolean journaled) {
+        products.compute(product.id, (id, previous) -> {
+            publish(product, journaled);
+            orderedIds.add(id);
+            return product;
+        });
+        version.incrementAndGet();
+    }
+    
+    private void publish(Product product, boolean journaled) {
+        if (journaled && journal != null) {
+            journal.append(Records.PRODUCT_SAVED, out -> Records.writeProduct(out, product));
+        }
+        for (ProductIndex index : indexes) {
+            index.update(product);
+        }
+    }
+    
+    private void unstore(Long id, boolean journaled) {
+        products.compute(id, (key, product) -> {
+            if (product == null) {
+                return null;
+            }
+            if (journaled && journal != null) {
+                journal.append(Records.PRODUCT_DELETED, out -> out.writeLong(key));
+            }
+            for (ProductIndex index : indexes) {
+                index.remove(key);
+            }
+            orderedIds.remove(key);
+            return null;
+        });
+        version.incrementAndGet();
+    }
+    
+    private void restore(Product product) {
+        idGenerator.accumulateAndGet(product.id + 1, Math::max);
+        store(product, false);
+    }
+    
+    private void clear() {
+        for (Long id : new ArrayList<>(orderedIds)) {
+            unstore(id, false);
+        }
+    }
+    
+    private void replay(byte type, DataInput in) throws IOException {
+        switch (type) {
+            case Records.PRODUCT_SAVED:
+                restore(Records.readProduct(in));
+                break;
+            case Records.PRODUCT_DELETED:
+                unstore(in.readLong(), false);
+                break;
+            case Records.STOCK_CHANGED:
+                Long stockedId = in.readLong();
+                int delta = in.readInt();
+                if (products.addStock(stockedId, delta, () -> { })) {
+                    version.incrementAndGet();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Incremented after every change to the catalog, stock included. Anything
+     * read after observing a version is at least as new as that version.
+     */
+    public long getVersion() {
+        return version.get();
     }
     
     public Product findById(Long id) {
@@ -48,37 +169,230 @@ public class ProductRepository {
     }
     
     public List<Product> findAll() {
-        return new ArrayList<>(products.values());
+        return products.values();
+    }
+    
+    public List<Product> findPage(Long after, int limit) {
+        List<Product> page = new ArrayList<>(Math.min(limit, 256));
+        Iterator<Product> it = iterateById(after).iterator();
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        return page;
+    }
+    
+    /**
+     * Lazily walks the catalog in ascending id order, starting after the
+     * given id (or from the start when null). Nothing is copied up front.
+     */
+    public Iterable<Product> iterateById(Long after) {
+        NavigableSet<Long> ids = after == null ? orderedIds : orderedIds.tailSet(after, false);
+        return () -> new Iterator<Product>() {
+            private final Iterator<Long> idIterator = ids.iterator();
+            private Product next;
+            
+            @Override
+            public boolean hasNext() {
+                while (next == null && idIterator.hasNext()) {
+                    next = products.get(idIterator.next());
+                }
+                return next != null;
+            }
+            
+            @Override
+            public Product next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Product product = next;
+                next = null;
+                return product;
+            }
+        };
     }
     
     public List<Product> findByCategory(String category) {
+        Set<Long> ids = categoryIndex.idsIn(category);
+        List<Product> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product product = products.get(id);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+    
+    public int countByCategory(String category) {
+        return categoryIndex.count(category);
+    }
+    
+    public Map<String, Integer> countsByCategory() {
+        return categoryIndex.counts();
+    }
+    
+    public List<Product> search(String query, int limit) {
         List<Product> result = new ArrayList<>();
-        for (Product product : products.values()) {
-            if (category.equals(product.category)) {
+        for (Long id : searchIndex.search(query, limit)) {
+            Product product = products.get(id);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Products priced from min to max inclusive, cheapest first.
+     */
+    public List<Product> findByPriceRange(double min, double max, int limit) {
+        if (min > max) {
+            return new ArrayList<>();
+        }
+        return resolve(priceIndex.between(min, max), limit);
+    }
+    
+    /**
+     * The cheapest products of a category, or of the whole catalog when the
+     * category is null.
+     */
+    public List<Product> findCheapest(String category, int limit) {
+        return resolve(priceIndex.in(category), limit);
+    }
+    
+    public List<Product> findMostExpensive(String category, int limit) {
+        return resolve(priceIndex.in(category).descendingSet(), limit);
+    }
+    
+    private List<Product> resolve(Iterable<PriceIndex.Entry> entries, int limit) {
+        List<Product> result = new ArrayList<>(Math.min(limit, 256));
+        Iterator<PriceIndex.Entry> it = entries.iterator();
+        while (result.size() < limit && it.hasNext()) {
+            PriceIndex.Entry entry = it.next();
+            Product product = products.get(entry.id);
+            // entries of a price being replaced are briefly listed twice
+            if (product != null && Double.compare(product.price, entry.price) == 0) {
                 result.add(product);
             }
         }
         return result;
     }
     
+    /**
+     * Publishes the product as given; callers must not modify it afterwards
+     * (use {@link #update} to change a saved product).
+     */
     public Product save(Product product) {
         if (product.id == null) {
             product.id = idGenerator.getAndIncrement();
+        } else {
+            // keep generated ids clear of ids assigned by callers
+            idGenerator.accumulateAndGet(product.id + 1, Math::max);
         }
-        products.put(product.id, product);
+        store(product, true);
         return product;
     }
     
+    /**
+     * Replaces a product with a changed copy. The copy is made and published
+     * while holding the product's slot, so concurrent updates are not lost,
+     * and readers keep the previous value until the new one is in place.
+     * Returns the new value, or null when there is no such product.
+     */
+    public Product update(Long id, Consumer<Product> change) {
+        Product updated = products.compute(id, (key, current) -> {
+            if (current == null) {
+                return null;
+            }
+            Product copy = current.copy();
+            change.accept(copy);
+            copy.id = key;
+            publish(copy, true);
+            return copy;
+        });
+        if (updated != null) {
+            version.incrementAndGet();
+        }
+        return updated;
+    }
+    
     public void delete(Long id) {
-        products.remove(id);
+        unstore(id, true);
+    }
+    
+    public boolean addStock(Long productId, int quantity) {
+        if (!products.addStock(productId, quantity, () -> journalStock(productId, quantity))) {
+            return false;
+        }
+        version.incrementAndGet();
+        return true;
+    }
+    
+    private void journalStock(Long productId, int delta) {
+        if (journal != null) {
+            journal.append(Records.STOCK_CHANGED, out -> {
+                out.writeLong(productId);
+                out.writeInt(delta);
+            });
+        }
+    }
+    
+    public StockReservation reserve(Map<Long, Integer> quantities) {
+        Long[] productIds = quantities.keySet().toArray(new Long[0]);
+        Arrays.sort(productIds);
+        int[] taken = new int[productIds.length];
+        
+        for (int i = 0; i < productIds.length; i++) {
+            Long productId = productIds[i];
+            int quantity = quantities.get(productId);
+            if (!products.tryTakeStock(productId, quantity, () -> journalStock(productId, -quantity))) {
+                release(productIds, taken, i);
+                return StockReservation.failed(productId);
+            }
+            taken[i] = quantity;
+        }
+        version.incrementAndGet();
+        return new StockReservation(this, productIds, taken);
+    }
+    
+    /**
+     * Reserves stock for several orders. Demand is first summed per product
+     * and taken in a single pass, so a hot SKU sees one update for the whole
+     * batch; if that fails the orders are reserved one at a time, in order.
+     */
+    public StockReservation[] reserveAll(List<Map<Long, Integer>> demands) {
+        StockReservation[] reservations = new StockReservation[demands.size()];
+        
+        Map<Long, Integer> combined = new HashMap<>();
+        for (Map<Long, Integer> demand : demands) {
+            demand.forEach((productId, quantity) -> combined.merge(productId, quantity, Integer::sum));
+        }
+        
+        if (reserve(combined).isReserved()) {
+            for (int i = 0; i < reservations.length; i++) {
+                reservations[i] = alreadyTaken(demands.get(i));
+            }
+        } else {
+            for (int i = 0; i < reservations.length; i++) {
+                reservations[i] = reserve(demands.get(i));
+            }
+        }
+        return reservations;
+    }
+    
+    private StockReservation alreadyTaken(Map<Long, Integer> demand) {
+        Long[] productIds = demand.keySet().toArray(new Long[0]);
+        Arrays.sort(productIds);
+        int[] quantities = new int[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            quantities[i] = demand.get(productIds[i]);
+        }
+        return new StockReservation(this, productIds, quantities);
     }
     
-    public boolean decrementStock(Long productId, int quantity) {
-        Product product = products.get(productId);
-        if (product != null && product.stock >= quantity) {
-            product.stock -= quantity;
-            return true;
+    void release(Long[] productIds, int[] quantities, int count) {
+        for (int i = 0; i < count; i++) {
+            addStock(productIds[i], quantities[i]);
         }
-        return false;
     }
 }
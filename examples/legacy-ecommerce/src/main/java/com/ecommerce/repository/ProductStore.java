@@ -0,0 +1,55 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Where {@link ProductRepository} keeps its products, chosen with
+ * {@code ecommerce.catalog.storage}: {@code heap} (the default) keeps the
+ * saved objects in a map, {@code columnar} keeps their fields in primitive
+ * columns and builds a product each time one is read.
+ */
+interface ProductStore {
+    
+    Product get(Long id);
+    
+    /**
+     * Replaces the product under the id with what the function returns (null
+     * removes it). Calls for the same id never overlap, so the function can
+     * also update the journal and indexes; it must not call back into the
+     * store.
+     */
+    Product compute(Long id, BiFunction<Long, Product, Product> remapping);
+    
+    /**
+     * Takes the quantity from the product's stock if that much is left and
+     * then runs {@code taken}, before any {@link #compute} for the id can
+     * start. What the callback journals is thereby ordered with the saves
+     * of the product, which record its stock.
+     */
+    boolean tryTakeStock(Long id, int quantity, Runnable taken);
+    
+    /**
+     * Adds to the product's stock and runs {@code added}, ordered with
+     * {@link #compute} like {@link #tryTakeStock}.
+     */
+    boolean addStock(Long id, int quantity, Runnable added);
+    
+    boolean isEmpty();
+    
+    List<Product> values();
+    
+    static ProductStore fromSystemProperties() {
+        String storage = System.getProperty("ecommerce.catalog.storage", "heap");
+        switch (storage) {
+            case "heap":
+                return new HeapProductStore();
+            case "columnar":
+                return new ColumnarProductStore();
+            default:
+                throw new IllegalArgumentException("Unknown ecommerce.catalog.storage: " + storage);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over product names and descriptions. Terms are lower-cased
+ * runs of letters and digits; a name hit weighs more than a description hit.
+ */
+class SearchIndex implements ProductIndex {
+    
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    
+    private final Map<String, Map<Long, Integer>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> termsById = new ConcurrentHashMap<>();
+    
+    @Override
+    public void update(Product product) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String term : tokenize(product.name)) {
+            weights.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(product.description)) {
+            weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum);
+        }
+        
+        Set<String> previous = termsById.put(product.id, weights.keySet());
+        if (previous != null) {
+            for (String term : previous) {
+                if (!weights.containsKey(term)) {
+                    unlink(term, product.id);
+                }
+            }
+        }
+        // added under the term's slot, so unlink cannot drop the map in between
+        weights.forEach((term, weight) -> postings.compute(term, (key, ids) -> {
+            if (ids == null) {
+                ids = new ConcurrentHashMap<>();
+            }
+            ids.put(product.id, weight);
+            return ids;
+        }));
+    }
+    
+    @Override
+    public void remove(Long productId) {
+        Set<String> previous = termsById.remove(productId);
+        if (previous != null) {
+            for (String term : previous) {
+                unlink(term, productId);
+            }
+        }
+    }
+    
+    private void unlink(String term, Long productId) {
+        postings.computeIfPresent(term, (key, ids) -> {
+            ids.remove(productId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+    
+    /**
+     * Ids of products containing every term of the query, best match first.
+     */
+    List<Long> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        
+        List<Map<Long, Integer>> lists = new ArrayList<>(terms.size());
+        double[] idf = new double[terms.size()];
+        for (String term : terms) {
+            Map<Long, Integer> ids = postings.get(term);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Map::size));
+        double documents = Math.max(1, termsById.size());
+        for (int i = 0; i < lists.size(); i++) {
+            idf[i] = Math.log(1 + documents / lists.get(i).size());
+        }
+        
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1);
+        candidates:
+        for (Map.Entry<Long, Integer> entry : lists.get(0).entrySet()) {
+            double score = entry.getValue() * idf[0];
+            for (int i = 1; i < lists.size(); i++) {
+                Integer weight = lists.get(i).get(entry.getKey());
+                if (weight == null) {
+                    continue candidates;
+                }
+                score += weight * idf[i];
+            }
+            best.add(new Match(entry.getKey(), score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        
+        Long[] ids = new Long[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = best.poll().productId;
+        }
+        return Arrays.asList(ids);
+    }
+    
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+    
+    private static class Match implements Comparable<Match> {
+        final Long productId;
+        final double score;
+        
+        Match(Long productId, double score) {
+            this.productId = productId;
+            this.score = score;
+        }
+        
+        // worst match first, so the queue head is the one to evict
+        @Override
+        public int compareTo(Match other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : other.productId.compareTo(productId);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ecommerce.repository;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stock taken for a whole cart by {@link ProductRepository#reserve}.
+ * Either every line was reserved or none was; a successful reservation
+ * can be handed back with {@link #release()}.
+ */
+public class StockReservation {
+    
+    private final ProductRepository repository;
+    private final Long[] productIds;
+    private final int[] quantities;
+    private final Long shortProductId;
+    private final AtomicBoolean released = new AtomicBoolean();
+    
+    StockReservation(ProductRepository repository, Long[] productIds, int[] quantities) {
+        this.repository = repository;
+        this.productIds = productIds;
+        this.quantities = quantities;
+        this.shortProductId = null;
+    }
+    
+    private StockReservation(Long shortProductId) {
+        this.repository = null;
+        this.productIds = new Long[0];
+        this.quantities = new int[0];
+        this.shortProductId = shortProductId;
+    }
+    
+    static StockReservation failed(Long shortProductId) {
+        return new StockReservation(shortProductId);
+    }
+    
+    public boolean isReserved() {
+        return shortProductId == null;
+    }
+    
+    public Long getShortProductId() {
+        return shortProductId;
+    }
+    
+    public void release() {
+        if (isReserved() && released.compareAndSet(false, true)) {
+            repository.release(productIds, quantities, productIds.length);
+        }
+    }
+}
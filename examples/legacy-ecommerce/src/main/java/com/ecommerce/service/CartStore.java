@@ -0,0 +1,168 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Open carts, bounded in number and expired after a period without updates.
+ *
+ * Expiry uses a hashed timer wheel: each cart id sits in the bucket of the
+ * tick at which it would expire, and a background sweeper only looks at the
+ * bucket that is due. Carts updated since they were scheduled are simply
+ * moved to a later bucket, so reads and writes never touch the wheel. The
+ * tick is sized so one turn of the wheel covers the idle TTL, which keeps
+ * buckets in deadline order for size-based eviction.
+ */
+class CartStore {
+    
+    private static final int WHEEL_SIZE = 512;
+    private static final long MIN_TICK_MILLIS = 100;
+    
+    private final Map<Long, Cart> carts = new ConcurrentHashMap<>();
+    private final Queue<Long>[] wheel;
+    private final int maxSize;
+    private final long idleTtlMillis;
+    private final long tickMillis;
+    private final Object overflowLock = new Object();
+    
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    
+    private long sweptTick;
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    CartStore(int maxSize, long idleTtlMillis) {
+        this.maxSize = maxSize;
+        this.idleTtlMillis = idleTtlMillis;
+        this.tickMillis = Math.max(MIN_TICK_MILLIS, (idleTtlMillis + WHEEL_SIZE - 1) / WHEEL_SIZE);
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.sweptTick = System.currentTimeMillis() / tickMillis;
+        
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(this::sweep, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    static CartStore fromSystemProperties() {
+        return new CartStore(
+                Integer.getInteger("ecommerce.carts.max-size", 100_000),
+                TimeUnit.MINUTES.toMillis(Long.getLong("ecommerce.carts.idle-ttl-minutes", 30)));
+    }
+    
+    Cart get(Long cartId) {
+        return carts.get(cartId);
+    }
+    
+    void put(Cart cart) {
+        carts.put(cart.id, cart);
+        schedule(cart.id, deadline(cart));
+        if (carts.size() > maxSize) {
+            evictOverflow(cart.id);
+        }
+    }
+    
+    Cart remove(Long cartId) {
+        return carts.remove(cartId);
+    }
+    
+    Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) carts.size());
+        stats.put("maxSize", (long) maxSize);
+        stats.put("expired", expired.sum());
+        stats.put("evicted", evicted.sum());
+        return stats;
+    }
+    
+    private long deadline(Cart cart) {
+        Date lastActivity = cart.updatedAt != null ? cart.updatedAt : cart.createdAt;
+        return lastActivity.getTime() + idleTtlMillis;
+    }
+    
+    private void schedule(Long cartId, long deadline) {
+        long tick = Math.max(deadline / tickMillis, currentTick() + 1);
+        wheel[(int) (tick % WHEEL_SIZE)].add(cartId);
+    }
+    
+    private long currentTick() {
+        return System.currentTimeMillis() / tickMillis;
+    }
+    
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        long tick = now / tickMillis;
+        // a late run catches up, but never spins more than one turn of the wheel
+        for (long t = Math.max(sweptTick + 1, tick - WHEEL_SIZE + 1); t <= tick; t++) {
+            Queue<Long> bucket = wheel[(int) (t % WHEEL_SIZE)];
+            for (int pending = bucket.size(); pending > 0; pending--) {
+                Long cartId = bucket.poll();
+                if (cartId == null) {
+                    break;
+                }
+                Cart cart = carts.get(cartId);
+                if (cart == null) {
+                    continue;
+                }
+                long deadline = deadline(cart);
+                if (deadline <= now) {
+                    if (carts.remove(cartId, cart)) {
+                        expired.increment();
+                    }
+                } else {
+                    schedule(cartId, deadline);
+                }
+            }
+        }
+        sweptTick = tick;
+    }
+    
+    /**
+     * Drops the carts closest to expiring until the store is a 1/64 slack
+     * under its bound, so the wheel scan is paid once per batch of puts
+     * rather than on every put past the bound. The cart just put is never
+     * dropped, even when it shares a bucket with the oldest carts.
+     */
+    private void evictOverflow(Long keep) {
+        synchronized (overflowLock) {
+            int target = Math.max(1, maxSize - Math.max(1, maxSize / 64));
+            long tick = currentTick();
+            for (int offset = 0; offset <= WHEEL_SIZE && carts.size() > target; offset++) {
+                long bucketTick = tick + offset;
+                Queue<Long> bucket = wheel[(int) (bucketTick % WHEEL_SIZE)];
+                for (int pending = bucket.size(); pending > 0 && carts.size() > target; pending--) {
+                    Long cartId = bucket.poll();
+                    if (cartId == null) {
+                        break;
+                    }
+                    if (cartId.equals(keep)) {
+                        bucket.add(cartId);
+                        continue;
+                    }
+                    Cart cart = carts.get(cartId);
+                    if (cart == null) {
+                        continue;
+                    }
+                    long deadline = deadline(cart);
+                    if (deadline / tickMillis > bucketTick) {
+                        schedule(cartId, deadline);
+                    } else if (carts.remove(cartId, cart)) {
+                        evicted.increment();
+                    }
+                }
+            }
+        }
+    }
+}
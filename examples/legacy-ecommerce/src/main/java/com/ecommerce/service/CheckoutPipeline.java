@@ -0,0 +1,322 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.CheckoutRequest;
+import com.ecommerce.model.CheckoutResult;
+import com.ecommerce.model.Order;
+import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.repository.StockReservation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checkout on a pre-allocated ring of slots worked by one thread per stage:
+ * validate, reserve, price, persist, notify.
+ *
+ * Request threads claim a sequence, fill the slot and wait on its future.
+ * Each stage owns a cursor and processes everything between its own cursor
+ * and the one of the stage before it as a batch, so stock for a whole batch
+ * is reserved with one {@link ProductRepository#reserveAll} call and order
+ * ids are handed out by the persist thread alone. A producer only reuses a
+ * slot once the notify stage has moved past it. A stage with nothing to do
+ * spins briefly, then parks until the stage before it, or a producer for
+ * the first stage, hands it work.
+ */
+class CheckoutPipeline {
+    
+    private static final int VALIDATE = 0;
+    private static final int RESERVE = 1;
+    private static final int PRICE = 2;
+    private static final int PERSIST = 3;
+    private static final int NOTIFY = 4;
+    private static final int STAGES = 5;
+    
+    // cursors sit 128 bytes apart so stages do not false-share
+    private static final int PADDING = 16;
+    private static final int SPINS = 200;
+    
+    private final OrderService service;
+    private final CartStore carts;
+    private final ProductRepository productRepository;
+    
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLongArray cursors = new AtomicLongArray(STAGES * PADDING);
+    private final AtomicIntegerArray parked = new AtomicIntegerArray(STAGES * PADDING);
+    private final Thread[] threads = new Thread[STAGES];
+    private final Set<Long> cartsInFlight = ConcurrentHashMap.newKeySet();
+    
+    CheckoutPipeline(OrderService service, CartStore carts, ProductRepository productRepository, int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two: " + size);
+        }
+        this.service = service;
+        this.carts = carts;
+        this.productRepository = productRepository;
+        this.ring = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        for (int stage = 0; stage < STAGES; stage++) {
+            cursors.set(stage * PADDING, -1);
+            int current = stage;
+            Thread thread = new Thread(() -> run(current), "checkout-stage-" + stage);
+            thread.setDaemon(true);
+            threads[stage] = thread;
+            thread.start();
+        }
+    }
+    
+    /**
+     * The pipeline enabled by the system property
+     * {@code ecommerce.checkout.pipeline}, sized by
+     * {@code ecommerce.checkout.pipeline.ring-size} (default 1024), or null
+     * when checkout runs inline.
+     */
+    static CheckoutPipeline fromSystemProperties(OrderService service, CartStore carts,
+                                                 ProductRepository productRepository) {
+        if (!Boolean.getBoolean("ecommerce.checkout.pipeline")) {
+            return null;
+        }
+        int size = Integer.getInteger("ecommerce.checkout.pipeline.ring-size", 1024);
+        return new CheckoutPipeline(service, carts, productRepository, size);
+    }
+    
+    CompletableFuture<CheckoutResult> submit(CheckoutRequest request) {
+        long sequence = claimed.incrementAndGet();
+        int idle = 0;
+        while (sequence - ring.length > cursor(NOTIFY)) {
+            idle = backOff(idle);
+        }
+        Slot slot = ring[(int) sequence & mask];
+        slot.request = request;
+        slot.future = new CompletableFuture<>();
+        slot.published = sequence;
+        wake(VALIDATE);
+        return slot.future;
+    }
+    
+    CheckoutResult checkout(CheckoutRequest request) {
+        return await(submit(request));
+    }
+    
+    static CheckoutResult await(CompletableFuture<CheckoutResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private long cursor(int stage) {
+        return cursors.get(stage * PADDING);
+    }
+    
+    private void run(int stage) {
+        long processed = -1;
+        int idle = 0;
+        while (true) {
+            long available = available(stage, processed);
+            if (available <= processed) {
+                if (idle < SPINS) {
+                    idle = backOff(idle);
+                } else {
+                    park(stage, processed);
+                }
+                continue;
+            }
+            idle = 0;
+            process(stage, processed + 1, available);
+            processed = available;
+            cursors.set(stage * PADDING, processed);
+            if (stage < NOTIFY) {
+                wake(stage + 1);
+            }
+        }
+    }
+    
+    private long available(int stage, long processed) {
+        return stage == VALIDATE ? publishedAfter(processed) : cursor(stage - 1);
+    }
+    
+    // the flag is raised before the last look for work and read after work is handed over, so no wake-up is lost
+    private void park(int stage, long processed) {
+        parked.set(stage * PADDING, 1);
+        if (available(stage, processed) <= processed) {
+            LockSupport.park(this);
+        }
+        parked.set(stage * PADDING, 0);
+    }
+    
+    private void wake(int stage) {
+        if (parked.get(stage * PADDING) != 0) {
+            LockSupport.unpark(threads[stage]);
+        }
+    }
+    
+    private long publishedAfter(long sequence) {
+        long limit = sequence + ring.length;
+        while (sequence < limit && ring[(int) (sequence + 1) & mask].published == sequence + 1) {
+            sequence++;
+        }
+        return sequence;
+    }
+    
+    private void process(int stage, long from, long to) {
+        if (stage == RESERVE) {
+            reserve(from, to);
+            return;
+        }
+        for (long sequence = from; sequence <= to; sequence++) {
+            Slot slot = ring[(int) sequence & mask];
+            try {
+                switch (stage) {
+                    case VALIDATE:
+                        validate(slot);
+                        break;
+                    case PRICE:
+                        if (slot.isLive()) {
+                            slot.order = new Order(slot.request.userId, slot.lines, slot.request.shippingAddress);
+                            slot.order.billingAddress = slot.request.billingAddress;
+                        }
+                        break;
+                    case PERSIST:
+                        if (slot.isLive()) {
+                            service.persist(slot.order, slot.request.cartId, slot.reservation);
+                            slot.persisted = true;
+                        }
+                        break;
+                    default:
+                        complete(slot);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                slot.failure = e;
+            }
+        }
+    }
+    
+    private void validate(Slot slot) {
+        CheckoutRequest request = slot.request;
+        Cart cart = request.cartId == null ? null : carts.get(request.cartId);
+        if (cart == null) {
+            slot.error = "Cart not found";
+        } else if (request.shippingAddress == null || request.shippingAddress.isEmpty()) {
+            slot.error = "Shipping address is required";
+        } else if (!cartsInFlight.add(request.cartId)) {
+            slot.error = "Cart already being checked out";
+        } else {
+            slot.holdsCart = true;
+            slot.lines = cart.getItems();
+            if (slot.lines.isEmpty()) {
+                slot.error = "Cart is empty";
+            }
+        }
+    }
+    
+    private void reserve(long from, long to) {
+        List<Slot> batch = new ArrayList<>();
+        List<Map<Long, Integer>> demands = new ArrayList<>();
+        for (long sequence = from; sequence <= to; sequence++) {
+            Slot slot = ring[(int) sequence & mask];
+            if (slot.isLive()) {
+                Map<Long, Integer> quantities = new HashMap<>();
+                for (Cart.CartItem line : slot.lines) {
+                    quantities.merge(line.product.id, line.quantity, Integer::sum);
+                }
+                batch.add(slot);
+                demands.add(quantities);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            StockReservation[] reservations = productRepository.reserveAll(demands);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).reservation = reservations[i];
+            }
+        } catch (RuntimeException e) {
+            for (Slot slot : batch) {
+                slot.failure = e;
+            }
+        }
+    }
+    
+    private void complete(Slot slot) {
+        if (slot.holdsCart) {
+            cartsInFlight.remove(slot.request.cartId);
+        }
+        CompletableFuture<CheckoutResult> future = slot.future;
+        if (slot.failure != null) {
+            if (slot.reservation != null && !slot.persisted) {
+                slot.reservation.release();
+            }
+            future.completeExceptionally(slot.failure);
+        } else {
+            CheckoutResult result = new CheckoutResult(slot.request.cartId);
+            result.order = slot.error == null ? slot.order : null;
+            result.error = slot.error;
+            future.complete(result);
+        }
+        slot.clear();
+    }
+    
+    private static int backOff(int idle) {
+        if (idle < SPINS / 2) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return idle + 1;
+    }
+    
+    private static class Slot {
+        
+        volatile long published = -1;
+        
+        CheckoutRequest request;
+        CompletableFuture<CheckoutResult> future;
+        List<Cart.CartItem> lines;
+        StockReservation reservation;
+        Order order;
+        String error;
+        RuntimeException failure;
+        boolean holdsCart;
+        boolean persisted;
+        
+        boolean isLive() {
+            return error == null && failure == null;
+        }
+        
+        void clear() {
+            request = null;
+            future = null;
+            lines = null;
+            reservation = null;
+            order = null;
+            error = null;
+            failure = null;
+            holdsCart = false;
+            persisted = false;
+        }
+    }
+}
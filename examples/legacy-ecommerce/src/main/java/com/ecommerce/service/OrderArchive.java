@@ -0,0 +1,478 @@
+package com.ecommerce.service;
+
+import com.ecommerce.journal.Records;
+import com.ecommerce.model.Order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier for orders that reached a final status a while ago.
+ *
+ * Orders are appended to one file in blocks of {@code [magic][count][raw
+ * length][payload length]}, then per order {@code [id][user id][order
+ * date][offset]}, then the orders in the journal's record encoding,
+ * deflated together. Only block headers are read at startup. In memory
+ * each archived order costs five longs in two sorted indexes, one by id and
+ * one by user and date, pointing at its block and offset; a few recently
+ * read blocks are kept inflated.
+ *
+ * A block is forced to disk before its orders are indexed. The blocks of
+ * an append that fails are truncated away again, and a block cut short by
+ * a crash is truncated away when the archive is opened.
+ */
+class OrderArchive {
+    
+    private static final int MAGIC = 0x454F4131;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 28;
+    private static final int MAX_RAW_BYTES = 1 << 20;
+    private static final int OFFSET_BITS = 24;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long NONE = Long.MIN_VALUE;
+    
+    private final Path file;
+    private final FileChannel channel;
+    private final int blockSize;
+    private final long minAgeMillis;
+    private final Map<Long, byte[]> inflatedBlocks;
+    
+    private volatile Index index = Index.EMPTY;
+    private long end;
+    
+    OrderArchive(Path file, int blockSize, long minAgeMillis, int cachedBlocks) throws IOException {
+        this.file = file;
+        this.blockSize = blockSize;
+        this.minAgeMillis = minAgeMillis;
+        this.inflatedBlocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+        Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+    
+    /**
+     * The archive configured with {@code ecommerce.orders.archive.dir}, or
+     * null when orders are all kept in memory. Shared, as the file has a
+     * single writer.
+     */
+    static OrderArchive getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private static class Holder {
+        static final OrderArchive INSTANCE = fromSystemProperties();
+    }
+    
+    private static OrderArchive fromSystemProperties() {
+        String dir = System.getProperty("ecommerce.orders.archive.dir");
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        try {
+            return new OrderArchive(Paths.get(dir, "orders.archive"),
+                    Integer.getInteger("ecommerce.orders.archive.block-size", 256),
+                    TimeUnit.HOURS.toMillis(Long.getLong("ecommerce.orders.archive.min-age-hours", 720)),
+                    Integer.getInteger("ecommerce.orders.archive.cached-blocks", 64));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open order archive in " + dir, e);
+        }
+    }
+    
+    long getMinAgeMillis() {
+        return minAgeMillis;
+    }
+    
+    /**
+     * Moves old finished orders out of the service every
+     * {@code ecommerce.orders.archive.interval-seconds} (default 300) on a
+     * daemon thread.
+     */
+    void start(OrderService service) {
+        long interval = Long.getLong("ecommerce.orders.archive.interval-seconds", 300);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                service.archiveOrders();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not archive orders to " + file + ": " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+    
+    int size() {
+        return index.ids.length;
+    }
+    
+    long maxId() {
+        long[] ids = index.ids;
+        return ids.length == 0 ? 0 : ids[ids.length - 1];
+    }
+    
+    boolean contains(long orderId) {
+        return index.locate(orderId) >= 0;
+    }
+    
+    Order find(long orderId) throws IOException {
+        long location = index.locate(orderId);
+        return location < 0 ? null : read(location);
+    }
+    
+    /**
+     * A user's archived orders by order date, optionally bounded (inclusive)
+     * on either side.
+     */
+    List<Order> findByUser(Long userId, Date from, Date to) throws IOException {
+        List<Order> result = new ArrayList<>();
+        if (userId == null) {
+            return result;
+        }
+        Index current = index;
+        long fromMillis = from == null ? NONE : from.getTime();
+        long toMillis = to == null ? Long.MAX_VALUE : to.getTime();
+        for (int i = current.firstOf(userId, fromMillis);
+             i < current.users.length && current.users[i] == userId && current.dates[i] <= toMillis; i++) {
+            result.add(read(current.userLocations[i]));
+        }
+        return result;
+    }
+    
+    /**
+     * Appends the orders not archived yet, in blocks, and indexes them once
+     * they are on disk. Each order is serialized under its monitor, as the
+     * service updates orders under theirs.
+     */
+    synchronized void append(List<Order> candidates) throws IOException {
+        List<Order> orders = new ArrayList<>(candidates.size());
+        Set<Long> ids = new HashSet<>();
+        for (Order order : candidates) {
+            if (!contains(order.id) && ids.add(order.id)) {
+                orders.add(order);
+            }
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        long start = end;
+        Entries added = new Entries(orders.size());
+        try {
+            int from = 0;
+            while (from < orders.size()) {
+                from = writeBlock(orders, from, added);
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            // blocks written before the failure are not indexed, so the next append would write them again
+            try {
+                channel.truncate(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            end = start;
+            throw e;
+        }
+        index = index.merge(Index.of(added));
+    }
+    
+    private int writeBlock(List<Order> orders, int from, Entries added) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        List<Order> block = new ArrayList<>(blockSize);
+        List<Integer> offsets = new ArrayList<>(blockSize);
+        int next = from;
+        while (next < orders.size() && block.size() < blockSize && out.size() < MAX_RAW_BYTES) {
+            Order order = orders.get(next++);
+            offsets.add(out.size());
+            synchronized (order) {
+                Records.writeOrder(out, order);
+            }
+            block.add(order);
+        }
+        out.flush();
+        byte[] payload = deflate(raw.toByteArray());
+        
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + block.size() * ENTRY_BYTES + payload.length);
+        buffer.putInt(MAGIC).putInt(block.size()).putInt(raw.size()).putInt(payload.length);
+        for (int i = 0; i < block.size(); i++) {
+            Order order = block.get(i);
+            long user = order.userId == null ? NONE : order.userId;
+            long date = order.orderDate == null ? NONE : order.orderDate.getTime();
+            buffer.putLong(order.id).putLong(user).putLong(date).putInt(offsets.get(i));
+            added.add(order.id, user, date, end << OFFSET_BITS | offsets.get(i));
+        }
+        buffer.put(payload).flip();
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        return next;
+    }
+    
+    private void load() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        Entries loaded = new Entries(1024);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int magic = header.getInt();
+            int count = header.getInt();
+            header.getInt();
+            int payloadLength = header.getInt();
+            long blockEnd = position + HEADER_BYTES + (long) count * ENTRY_BYTES + payloadLength;
+            if (magic != MAGIC || count <= 0 || payloadLength < 0 || blockEnd > size) {
+                break;
+            }
+            ByteBuffer entries = ByteBuffer.allocate(count * ENTRY_BYTES);
+            readFully(entries, position + HEADER_BYTES);
+            for (int i = 0; i < count; i++) {
+                long id = entries.getLong();
+                long user = entries.getLong();
+                long date = entries.getLong();
+                loaded.add(id, user, date, position << OFFSET_BITS | entries.getInt());
+            }
+            position = blockEnd;
+        }
+        if (position < size) {
+            System.err.println("Truncating order archive " + file + " after an incomplete block at " + position);
+            channel.truncate(position);
+        }
+        end = position;
+        index = Index.of(loaded);
+    }
+    
+    private Order read(long location) throws IOException {
+        byte[] raw = inflated(location >>> OFFSET_BITS);
+        int offset = (int) (location & OFFSET_MASK);
+        return Records.readOrder(new DataInputStream(new ByteArrayInputStream(raw, offset, raw.length - offset)));
+    }
+    
+    private byte[] inflated(long blockPosition) throws IOException {
+        synchronized (inflatedBlocks) {
+            byte[] cached = inflatedBlocks.get(blockPosition);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, blockPosition);
+        header.getInt();
+        int count = header.getInt();
+        int rawLength = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt());
+        readFully(payload, blockPosition + HEADER_BYTES + (long) count * ENTRY_BYTES);
+        
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload.array());
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                length += inflater.inflate(raw, length, rawLength - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt order archive block at " + blockPosition, e);
+        } finally {
+            inflater.end();
+        }
+        synchronized (inflatedBlocks) {
+            inflatedBlocks.put(blockPosition, raw);
+        }
+        return raw;
+    }
+    
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of order archive " + file);
+            }
+        }
+        buffer.flip();
+    }
+    
+    private static final class Entries {
+        long[] ids;
+        long[] users;
+        long[] dates;
+        long[] locations;
+        int size;
+        
+        Entries(int capacity) {
+            ids = new long[capacity];
+            users = new long[capacity];
+            dates = new long[capacity];
+            locations = new long[capacity];
+        }
+        
+        void add(long id, long user, long date, long location) {
+            if (size == ids.length) {
+                int capacity = Math.max(16, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                users = Arrays.copyOf(users, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                locations = Arrays.copyOf(locations, capacity);
+            }
+            ids[size] = id;
+            users[size] = user;
+            dates[size] = date;
+            locations[size] = location;
+            size++;
+        }
+    }
+    
+    /**
+     * Sorted primitive indexes over the archive, replaced as a whole when
+     * blocks are added so readers always see a consistent one.
+     */
+    private static final class Index {
+        
+        static final Index EMPTY = new Index(new long[0], new long[0], new long[0], new long[0], new long[0]);
+        
+        final long[] ids;
+        final long[] idLocations;
+        final long[] users;
+        final long[] dates;
+        final long[] userLocations;
+        
+        Index(long[] ids, long[] idLocations, long[] users, long[] dates, long[] userLocations) {
+            this.ids = ids;
+            this.idLocations = idLocations;
+            this.users = users;
+            this.dates = dates;
+            this.userLocations = userLocations;
+        }
+        
+        static Index of(Entries entries) {
+            Integer[] byId = new Integer[entries.size];
+            List<Integer> withUser = new ArrayList<>(entries.size);
+            for (int i = 0; i < entries.size; i++) {
+                byId[i] = i;
+                if (entries.users[i] != NONE) {
+                    withUser.add(i);
+                }
+            }
+            Arrays.sort(byId, Comparator.comparingLong(i -> entries.ids[i]));
+            withUser.sort((a, b) -> compare(entries.users[a], entries.dates[a], entries.locations[a],
+                    entries.users[b], entries.dates[b], entries.locations[b]));
+            
+            long[] ids = new long[byId.length];
+            long[] idLocations = new long[byId.length];
+            for (int i = 0; i < byId.length; i++) {
+                ids[i] = entries.ids[byId[i]];
+                idLocations[i] = entries.locations[byId[i]];
+            }
+            long[] users = new long[withUser.size()];
+            long[] dates = new long[withUser.size()];
+            long[] userLocations = new long[withUser.size()];
+            for (int i = 0; i < users.length; i++) {
+                int entry = withUser.get(i);
+                users[i] = entries.users[entry];
+                dates[i] = entries.dates[entry];
+                userLocations[i] = entries.locations[entry];
+            }
+            return new Index(ids, idLocations, users, dates, userLocations);
+        }
+        
+        Index merge(Index added) {
+            int count = ids.length + added.ids.length;
+            long[] mergedIds = new long[count];
+            long[] mergedIdLocations = new long[count];
+            for (int i = 0, j = 0, k = 0; k < count; k++) {
+                if (j == added.ids.length || (i < ids.length && ids[i] <= added.ids[j])) {
+                    mergedIds[k] = ids[i];
+                    mergedIdLocations[k] = idLocations[i++];
+                } else {
+                    mergedIds[k] = added.ids[j];
+                    mergedIdLocations[k] = added.idLocations[j++];
+                }
+            }
+            
+            int userCount = users.length + added.users.length;
+            long[] mergedUsers = new long[userCount];
+            long[] mergedDates = new long[userCount];
+            long[] mergedUserLocations = new long[userCount];
+            for (int i = 0, j = 0, k = 0; k < userCount; k++) {
+                boolean fromThis = j == added.users.length || (i < users.length
+                        && compare(users[i], dates[i], userLocations[i],
+                        added.users[j], added.dates[j], added.userLocations[j]) <= 0);
+                Index source = fromThis ? this : added;
+                int at = fromThis ? i++ : j++;
+                mergedUsers[k] = source.users[at];
+                mergedDates[k] = source.dates[at];
+                mergedUserLocations[k] = source.userLocations[at];
+            }
+            return new Index(mergedIds, mergedIdLocations, mergedUsers, mergedDates, mergedUserLocations);
+        }
+        
+        long locate(long id) {
+            int at = Arrays.binarySearch(ids, id);
+            return at < 0 ? -1 : idLocations[at];
+        }
+        
+        int firstOf(long user, long fromMillis) {
+            int low = 0;
+            int high = users.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(users[mid], dates[mid], userLocations[mid], user, fromMillis, Long.MIN_VALUE) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        private static int compare(long userA, long dateA, long locationA, long userB, long dateB, long locationB) {
+            int byUser = Long.compare(userA, userB);
+            if (byUser != 0) {
+                return byUser;
+            }
+            int byDate = Long.compare(dateA, dateB);
+            return byDate != 0 ? byDate : Long.compare(locationA, locationB);
+        }
+    }
+}
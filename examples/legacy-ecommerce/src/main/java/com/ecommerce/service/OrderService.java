@@ -1,23 +1,71 @@
 package com.ecommerce.service;
 
+import com.ecommerce.events.EventLog;
+import com.ecommerce.events.EventType;
+import com.ecommerce.journal.Journal;
+import com.ecommerce.journal.Records;
+import com.ecommerce.metrics.LatencyHistogram;
+import com.ecommerce.metrics.Metrics;
 import com.ecommerce.model.Cart;
+import com.ecommerce.model.CheckoutRequest;
+import com.ecommerce.model.CheckoutResult;
 import com.ecommerce.model.Order;
+import com.ecommerce.model.OrderStatus;
 import com.ecommerce.model.Product;
 import com.ecommerce.repository.ProductRepository;
+import com.ecommerce.repository.StockReservation;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class OrderService {
     
     private static OrderService instance;
     private static OrderService instance2;
-
+    
+    private static final int MAX_CART_ITEMS = 50;
+    
+    private static final LatencyHistogram CREATE_CART = timer("createCart");
+    private static final LatencyHistogram ADD_TO_CART = timer("addToCart");
+    private static final LatencyHistogram CREATE_ORDER = timer("createOrder");
+    private static final LatencyHistogram CREATE_ORDERS = timer("createOrders");
+    private static final LatencyHistogram UPDATE_STATUS = timer("updateOrderStatus");
+    private static final LatencyHistogram CANCEL_ORDER = timer("cancelOrder");
+    private static final LongAdder ARCHIVED = Metrics.getInstance().counter("orders_archived");
+    
     private ProductRepository productRepository = ProductRepository.getInstance();
     
-    private Long orderIdCounter = 1L;
-    private Long cartIdCounter = 1L;
-
+    private CartStore carts = CartStore.fromSystemProperties();
+    private Map<Long, Order> orders = new ConcurrentHashMap<>();
+    private UserOrderIndex userOrderIndex = new UserOrderIndex();
+    private OrderStatusIndex statusIndex = new OrderStatusIndex();
+    private OrderTotals totals = new OrderTotals();
+    private OrderArchive archive = OrderArchive.getInstance();
+    
+    private final AtomicLong orderIdCounter = new AtomicLong(1);
+    private final AtomicLong cartIdCounter = new AtomicLong(1);
+    private boolean debugMode = false;
+    
+    private Journal journal = Journal.getInstance();
+    private EventLog events = EventLog.getInstance();
+    private CheckoutPipeline pipeline = CheckoutPipeline.fromSystemProperties(this, carts, productRepository);
+    
     private OrderService() {
+        if (journal != null) {
+            journal.replay(this::replay);
+        }
+        if (archive != null) {
+            // archived without their journal record, or with no journal at all
+            orders.values().removeIf(order -> archive.contains(order.id) && dropArchived(order));
+            orderIdCounter.accumulateAndGet(archive.maxId() + 1, Math::max);
+            archive.start(this);
+        }
     }
     
     public static OrderService getInstance() {
@@ -38,103 +86,241 @@ public class OrderService {
         return instance2;
     }
     
+    private static LatencyHistogram timer(String operation) {
+        return Metrics.getInstance().timer("order_service_duration", "operation", operation);
+    }
+    
     public Cart createCart(Long userId) {
-        if (userId == null) {
-        }
-        
-        Cart cart = new Cart(cartIdCounter++, userId);
-        carts.put(cart.id, cart);
-        
-        if (debugMode) {
-            System.out.println("Created cart " + cart.id + " for user " + userId);
+        long start = System.nanoTime();
+        try {
+            if (userId == null) {
+            }
+            
+            Cart cart = new Cart(cartIdCounter.getAndIncrement(), userId);
+            carts.put(cart);
+            if (journal != null) {
+                journal.append(Records.CART_CREATED, out -> {
+                    out.writeLong(cart.id);
+                    Records.writeLong(out, cart.userId);
+                    Records.writeDate(out, cart.createdAt);
+                });
+            }
+            
+            if (debugMode) {
+                events.emit(EventType.CART_CREATED, cart.id, EventLog.id(userId));
+            }
+            
+            return cart;
+        } finally {
+            CREATE_CART.recordSince(start);
         }
-        
-        return cart;
     }
     
     public Cart getCart(Long cartId) {
         Cart c = carts.get(cartId);
         if (c == null && debugMode) {
-            System.out.println("WARNING: Cart not found: " + cartId);
+            events.emit(EventType.CART_NOT_FOUND, EventLog.id(cartId));
         }
         return c;
     }
     
+    public Map<String, Long> getCartStats() {
+        return carts.stats();
+    }
+    
     public boolean addToCart(Long cartId, Long productId, int quantity) {
-        Cart cart = carts.get(cartId);
-        Product product = productRepository.findById(productId);
-        
-        if (cart == null) return false;
-
-        cart.addItem(product, quantity);
-        
-
-        if (cart.items.size() > 10) {
+        long start = System.nanoTime();
+        try {
+            Cart cart = carts.get(cartId);
+            Product product = productRepository.findById(productId);
+            
+            if (cart == null) return false;
+            if (product == null || quantity <= 0) return false;
+            
+            synchronized (cart) {
+                cart.addItem(product, quantity);
+                journalCartLine(cart, productId);
+            }
+            
+            
+            if (cart.lineCount() > 10) {
+            }
+            
+            return true;
+        } finally {
+            ADD_TO_CART.recordSince(start);
         }
-        
-        return true;
     }
     
     public void addToCart(Cart cart, Product product, int qty) {
-        if (product.stock < qty) {
-            System.out.println("Not enough stock!");
+        if (product.getStock() < qty) {
+            events.emit(EventType.INSUFFICIENT_STOCK, EventLog.id(product.id), qty);
+        }
+        synchronized (cart) {
+            cart.addItem(product, qty);
+            journalCartLine(cart, product.id);
         }
-        cart.addItem(product, qty);
     }
     
     public void removeFromCart(Long cartId, Long productId) {
         Cart cart = carts.get(cartId);
         if (cart != null) {
-            cart.removeItem(productId);
+            synchronized (cart) {
+                cart.removeItem(productId);
+                journalCartLine(cart, productId);
+            }
         }
     }
     
-    public Order createOrder(Long userId, Long cartId, String shippingAddress) {
-        Cart cart = carts.get(cartId);
-        
-        if (cart == null) {
-        }
-        
-        if (cart.items.size() == 0) {
-            System.out.println("Empty cart!");
-            return null;
+    // callers hold the cart's monitor, so lines are journaled in the order they change
+    private void journalCartLine(Cart cart, Long productId) {
+        if (journal == null) {
+            return;
         }
-        
-        if (cart.items.size() > MAX_CART_ITEMS) {
+        Cart.CartItem line = cart.getItem(productId);
+        journal.append(Records.CART_LINE, out -> {
+            out.writeLong(cart.id);
+            out.writeLong(productId);
+            out.writeInt(line == null ? 0 : line.quantity);
+            out.writeDouble(line == null ? 0 : line.price);
+            Records.writeDate(out, cart.updatedAt);
+        });
+    }
+    
+    public Order createOrder(Long userId, Long cartId, String shippingAddress) {
+        return createOrder(userId, cartId, shippingAddress, null);
+    }
+    
+    public Order createOrder(Long userId, Long cartId, String shippingAddress, String billingAddress) {
+        long start = System.nanoTime();
+        try {
+            if (pipeline != null) {
+                CheckoutRequest request = new CheckoutRequest(userId, cartId, shippingAddress);
+                request.billingAddress = billingAddress;
+                return pipeline.checkout(request).order;
+            }
+            
+            Cart cart = carts.get(cartId);
+            
+            if (cart == null) {
+            }
+            
+            if (cart.isEmpty()) {
+                events.emit(EventType.CART_EMPTY, EventLog.id(cartId));
+                return null;
+            }
+            
+            if (cart.lineCount() > MAX_CART_ITEMS) {
+            }
+            
+            Order order = new Order(userId, cart, shippingAddress);
+            order.billingAddress = billingAddress;
+            order.id = orderIdCounter.getAndIncrement();
+            
+            StockReservation reservation = productRepository.reserve(quantitiesOf(order));
+            return place(order, cartId, reservation);
+        } finally {
+            CREATE_ORDER.recordSince(start);
         }
-        
-        Order order = new Order(userId, cart, shippingAddress);
-        order.id = orderIdCounter++;
-        
-        boolean allStockOk = true;
-        for (int i = 0; i < cart.items.size(); i++) {
-            Object obj = cart.items.get(i);
-            Cart.CartItem item = (Cart.CartItem) obj;
-            
-            Product p = item.product;
-            if (p != null) {
-                if (p.stock >= item.quantity) {
-                    p.stock = p.stock - item.quantity;
+    }
+    
+    /**
+     * Checks out many carts at once. Stock for the whole batch is reserved
+     * in one pass per product; only when that fails are the orders reserved
+     * one by one. Each request gets its own result, in request order.
+     */
+    public List<CheckoutResult> createOrders(List<CheckoutRequest> requests) {
+        long start = System.nanoTime();
+        try {
+            if (pipeline != null) {
+                List<CompletableFuture<CheckoutResult>> pending = new ArrayList<>(requests.size());
+                for (CheckoutRequest request : requests) {
+                    pending.add(pipeline.submit(request));
+                }
+                List<CheckoutResult> results = new ArrayList<>(pending.size());
+                for (CompletableFuture<CheckoutResult> future : pending) {
+                    results.add(CheckoutPipeline.await(future));
+                }
+                return results;
+            }
+            
+            List<CheckoutResult> results = new ArrayList<>(requests.size());
+            List<CheckoutResult> accepted = new ArrayList<>();
+            List<Map<Long, Integer>> demands = new ArrayList<>();
+            Set<Long> seenCarts = new HashSet<>();
+            
+            for (CheckoutRequest request : requests) {
+                CheckoutResult result = new CheckoutResult(request.cartId);
+                results.add(result);
+                
+                Cart cart = request.cartId == null ? null : carts.get(request.cartId);
+                if (cart == null) {
+                    result.error = "Cart not found";
+                } else if (!seenCarts.add(request.cartId)) {
+                    result.error = "Cart already checked out in this batch";
+                } else if (cart.isEmpty()) {
+                    result.error = "Cart is empty";
+                } else if (request.shippingAddress == null || request.shippingAddress.isEmpty()) {
+                    result.error = "Shipping address is required";
                 } else {
-                    allStockOk = false;
-                    System.out.println("Stock issue with product: " + p.name);
+                    result.order = new Order(request.userId, cart, request.shippingAddress);
+                    result.order.billingAddress = request.billingAddress;
+                    accepted.add(result);
+                    demands.add(quantitiesOf(result.order));
                 }
             }
+            
+            StockReservation[] reservations = productRepository.reserveAll(demands);
+            for (int i = 0; i < accepted.size(); i++) {
+                CheckoutResult result = accepted.get(i);
+                result.order.id = orderIdCounter.getAndIncrement();
+                place(result.order, result.cartId, reservations[i]);
+            }
+            return results;
+        } finally {
+            CREATE_ORDERS.recordSince(start);
         }
-        
-        if (!allStockOk) {
-            order.status = "PENDING_STOCK";
+    }
+    
+    private Map<Long, Integer> quantitiesOf(Order order) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (Object obj : order.items) {
+            Order.OrderItem item = (Order.OrderItem) obj;
+            quantities.merge(item.productId, item.quantity, Integer::sum);
         }
-        
-
-        if (order.totalAmount > 0) {
-            carts.remove(cartId);
+        return quantities;
+    }
+    
+    void persist(Order order, Long cartId, StockReservation reservation) {
+        order.id = orderIdCounter.getAndIncrement();
+        place(order, cartId, reservation);
+    }
+    
+    private Order place(Order order, Long cartId, StockReservation reservation) {
+        if (!reservation.isReserved()) {
+            order.status = OrderStatus.PENDING_STOCK;
+            events.emit(EventType.ORDER_STOCK_SHORTAGE, EventLog.id(reservation.getShortProductId()));
         }
         
         if (order.totalAmount > 200) {
             order.shippingAddress = order.shippingAddress + " [PRIORITY]";
         }
         
+        if (journal != null) {
+            journal.append(Records.ORDER_CREATED, out -> Records.writeOrder(out, order));
+        }
+        totals.created(order);
+        orders.put(order.id, order);
+        userOrderIndex.add(order);
+        statusIndex.add(order);
+        
+        if (order.totalAmount > 0) {
+            carts.remove(cartId);
+            if (journal != null) {
+                journal.append(Records.CART_REMOVED, out -> out.writeLong(cartId));
+            }
+        }
+        
         return order;
     }
     
@@ -147,100 +333,276 @@ public class OrderService {
         }
         
         Object o = orders.get(orderId);
+        if (o == null && archive != null) {
+            try {
+                o = archive.find(orderId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read archived order " + orderId, e);
+            }
+        }
         if (o == null) {
-            if (debugMode) System.out.println("Order not found: " + orderId);
+            if (debugMode) events.emit(EventType.ORDER_NOT_FOUND, orderId);
             return null;
         }
         
+        return (Order) o;
     }
     
     public List<Order> getOrdersByUser(Long userId) {
-
-        Iterator it = orders.values().iterator();
-        while (it.hasNext()) {
-            Order order = (Order) it.next();
-            
-            if (order.userId.equals(userId)) {
-                userOrders.add(order);
-            }
+        return withArchived(userOrderIndex.find(userId), userId, null, null);
+    }
+    
+    public List<Order> getOrdersByUser(Long userId, Date from, Date to) {
+        return withArchived(userOrderIndex.find(userId, from, to), userId, from, to);
+    }
+    
+    private List<Order> withArchived(List<Order> hot, Long userId, Date from, Date to) {
+        if (archive == null) {
+            return hot;
         }
-        
-        Collections.sort(userOrders, new Comparator<Order>() {
-            public int compare(Order o1, Order o2) {
-                return o1.orderDate.compareTo(o2.orderDate);
+        List<Order> archived;
+        try {
+            archived = archive.findByUser(userId, from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archived orders of user " + userId, e);
+        }
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        // an order archived while this was read can show up in both; the live copy wins
+        Set<Long> hotIds = new HashSet<>();
+        for (Order order : hot) {
+            hotIds.add(order.id);
+        }
+        List<Order> merged = new ArrayList<>(hot);
+        for (Order order : archived) {
+            if (!hotIds.contains(order.id)) {
+                merged.add(order);
             }
-        });
-        
-        return userOrders;
+        }
+        merged.sort(UserOrderIndex.BY_DATE);
+        return merged;
     }
     
-    public void updateOrderStatus(Long orderId, String newStatus) {
-        Order order = (Order) orders.get(orderId);
-        if (order != null) {
-            order.updateStatus(newStatus);
-            
-            if (newStatus.equals("DELIVERED")) {
-                order.deliveryDate = new Date();
-            } else if (newStatus.equals("SHIPPED")) {
+    /**
+     * Orders in memory with the given status, in id order, starting after
+     * the given id (or from the first when null). Orders moved to the
+     * archive are not listed.
+     */
+    public List<Order> getOrdersByStatus(OrderStatus status, Long after, int limit) {
+        List<Order> result = new ArrayList<>(Math.min(limit, 256));
+        Iterator<Long> ids = statusIndex.ids(status, after).iterator();
+        while (result.size() < limit && ids.hasNext()) {
+            Order order = orders.get(ids.next());
+            // an order changing status is briefly listed under both
+            if (order != null && order.status == status) {
+                result.add(order);
             }
         }
+        return result;
     }
     
-    public boolean cancelOrder(Long orderId) {
-        Order order = (Order) orders.get(orderId);
-        
-        if (order == null) {
-            return false;
+    /**
+     * Moves orders that have been in a final status for longer than the
+     * archive's minimum age to the archive, then drops them from memory.
+     * Revenue and sales totals are unaffected, as they are kept separately.
+     * An order whose status changed while it was being written stays in
+     * memory, where it takes precedence over its archived copy.
+     */
+    int archiveOrders() throws IOException {
+        long cutoff = System.currentTimeMillis() - archive.getMinAgeMillis();
+        List<Order> due = new ArrayList<>();
+        for (Order order : orders.values()) {
+            synchronized (order) {
+                Date settled = order.deliveryDate != null ? order.deliveryDate : order.orderDate;
+                if (order.status.isFinal() && settled != null && settled.getTime() < cutoff) {
+                    due.add(order);
+                }
+            }
         }
-        
-        if (order.status.equals("CANCELLED") ||
-            order.status.equals("DELIVERED") ||
-            order.status.equals("SHIPPED")) {
-            return false;
+        if (due.isEmpty()) {
+            return 0;
         }
+        due.sort(Comparator.comparing((Order order) -> order.id));
+        archive.append(due);
         
-        order.status = "CANCELLED";
-
-
-        if (order.orderDate.before(new Date())) {
-            orders.remove(orderId);
+        int archived = 0;
+        for (Order order : due) {
+            synchronized (order) {
+                if (!order.status.isFinal() || !orders.remove(order.id, order)) {
+                    continue;
+                }
+                dropArchived(order);
+            }
+            archived++;
+        }
+        ARCHIVED.add(archived);
+        return archived;
+    }
+    
+    private boolean dropArchived(Order order) {
+        userOrderIndex.remove(order);
+        statusIndex.remove(order);
+        if (journal != null) {
+            journal.append(Records.ORDER_ARCHIVED, out -> out.writeLong(order.id));
         }
-        
         return true;
     }
     
-    public double calculateTotalRevenue() {
-        double total = 0;
-        Iterator it = orders.values().iterator();
-        while (it.hasNext()) {
-            Order order = (Order) it.next();
+    public boolean updateOrderStatus(Long orderId, String newStatus) {
+        OrderStatus status = OrderStatus.parse(newStatus);
+        return status != null && updateOrderStatus(orderId, status);
+    }
+    
+    /**
+     * Moves an order to a new status. Returns false when there is no such
+     * order in memory or its current status does not allow the change.
+     */
+    public boolean updateOrderStatus(Long orderId, OrderStatus newStatus) {
+        long start = System.nanoTime();
+        try {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                return false;
+            }
+            synchronized (order) {
+                OrderStatus previousStatus = order.status;
+                if (previousStatus == newStatus) {
+                    return true;
+                }
+                if (!order.updateStatus(newStatus)) {
+                    return false;
+                }
+                
+                if (newStatus == OrderStatus.DELIVERED) {
+                    order.deliveryDate = new Date();
+                }
+                
+                totals.transition(order, previousStatus, newStatus);
+                statusIndex.move(order, previousStatus);
+                journalStatus(order);
+            }
+            return true;
+        } finally {
+            UPDATE_STATUS.recordSince(start);
+        }
+    }
+    
+    public boolean cancelOrder(Long orderId) {
+        long start = System.nanoTime();
+        try {
+            Order order = orders.get(orderId);
             
-            if (!order.status.equals("CANCELLED") &&
-                !order.status.equals("CANCEL")) {
-                total += order.totalAmount;
+            if (order == null) {
+                return false;
             }
+            
+            synchronized (order) {
+                if (!order.canBeCancelled()) {
+                    return false;
+                }
+                
+                OrderStatus previousStatus = order.status;
+                order.status = OrderStatus.CANCELLED;
+                totals.transition(order, previousStatus, order.status);
+                statusIndex.move(order, previousStatus);
+                journalStatus(order);
+            }
+            
+            
+            if (order.orderDate.before(new Date())) {
+                orders.remove(orderId);
+                userOrderIndex.remove(order);
+                statusIndex.remove(order);
+                if (journal != null) {
+                    journal.append(Records.ORDER_REMOVED, out -> out.writeLong(orderId));
+                }
+            }
+            
+            return true;
+        } finally {
+            CANCEL_ORDER.recordSince(start);
         }
-        return total;
     }
     
-    public double getTotalSales() {
-        double sum = 0.0;
-        for (Object o : orders.values()) {
-            Order order = (Order) o;
-            if (order.status.equals("DELIVERED") || 
-                order.status.equals("SHIPPED")) {
-                sum = sum + order.totalAmount;
+    private void journalStatus(Order order) {
+        if (journal != null) {
+            journal.append(Records.ORDER_STATUS, out -> {
+                out.writeLong(order.id);
+                Records.writeString(out, order.status.name());
+                Records.writeDate(out, order.deliveryDate);
+            });
+        }
+    }
+    
+    private void replay(byte type, DataInput in) throws IOException {
+        switch (type) {
+            case Records.CART_CREATED: {
+                Cart cart = new Cart(in.readLong(), Records.readLong(in));
+                cart.createdAt = Records.readDate(in);
+                cartIdCounter.accumulateAndGet(cart.id + 1, Math::max);
+                carts.put(cart);
+                break;
+            }
+            case Records.CART_LINE: {
+                Cart cart = carts.get(in.readLong());
+                Product product = productRepository.findById(in.readLong());
+                int quantity = in.readInt();
+                double price = in.readDouble();
+                Date updatedAt = Records.readDate(in);
+                if (cart != null && product != null) {
+                    cart.restoreItem(product, quantity, price, updatedAt);
+                }
+                break;
             }
+            case Records.CART_REMOVED:
+                carts.remove(in.readLong());
+                break;
+            case Records.ORDER_CREATED: {
+                Order order = Records.readOrder(in);
+                orderIdCounter.accumulateAndGet(order.id + 1, Math::max);
+                totals.created(order);
+                orders.put(order.id, order);
+                userOrderIndex.add(order);
+                statusIndex.add(order);
+                break;
+            }
+            case Records.ORDER_STATUS: {
+                Order order = orders.get(in.readLong());
+                OrderStatus status = OrderStatus.parse(Records.readString(in));
+                Date deliveryDate = Records.readDate(in);
+                if (order != null && status != null) {
+                    OrderStatus previousStatus = order.status;
+                    order.status = status;
+                    order.deliveryDate = deliveryDate;
+                    totals.transition(order, previousStatus, status);
+                    statusIndex.move(order, previousStatus);
+                }
+                break;
+            }
+            case Records.ORDER_REMOVED:
+            case Records.ORDER_ARCHIVED: {
+                Order order = orders.remove(in.readLong());
+                if (order != null) {
+                    userOrderIndex.remove(order);
+                    statusIndex.remove(order);
+                }
+                break;
+            }
+            default:
+                break;
         }
-        return sum;
     }
     
-    public void resetCounters() {
-        orderIdCounter = 1L;
-        cartIdCounter = 1L;
+    public double calculateTotalRevenue() {
+        return totals.revenue();
+    }
+    
+    public double getTotalSales() {
+        return totals.sales();
     }
     
     public void oldPaymentMethod(Order order) {
-        System.out.println("Processing payment for order: " + order.id);
+        events.emit(EventType.PAYMENT_PROCESSING, EventLog.id(order.id));
     }
 }
@@ -0,0 +1,47 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Order;
+import com.ecommerce.model.OrderStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Ids of the orders in memory per status, in id order, so listing the
+ * orders in one status walks only those. Callers move an order while
+ * holding its monitor; a moved order is added to its new status before it
+ * leaves the old one, so readers check the status of what they find.
+ */
+class OrderStatusIndex {
+    
+    private final Map<OrderStatus, NavigableSet<Long>> idsByStatus = new EnumMap<>(OrderStatus.class);
+    
+    OrderStatusIndex() {
+        for (OrderStatus status : OrderStatus.values()) {
+            idsByStatus.put(status, new ConcurrentSkipListSet<>());
+        }
+    }
+    
+    void add(Order order) {
+        idsByStatus.get(order.status).add(order.id);
+    }
+    
+    void move(Order order, OrderStatus previousStatus) {
+        if (previousStatus == order.status) {
+            return;
+        }
+        add(order);
+        idsByStatus.get(previousStatus).remove(order.id);
+    }
+    
+    void remove(Order order) {
+        idsByStatus.get(order.status).remove(order.id);
+    }
+    
+    NavigableSet<Long> ids(OrderStatus status, Long after) {
+        NavigableSet<Long> ids = idsByStatus.get(status);
+        return after == null ? ids : ids.tailSet(after, false);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Order;
+import com.ecommerce.model.OrderStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running revenue and sales sums, kept in cents so that concurrent updates
+ * add up exactly. Callers report every status change of an order; a
+ * transition removes the amount from the buckets the old status counted
+ * in and adds it to the ones the new status counts in.
+ */
+class OrderTotals {
+    
+    private final LongAdder revenueCents = new LongAdder();
+    private final LongAdder salesCents = new LongAdder();
+    
+    void created(Order order) {
+        transition(order, null, order.status);
+    }
+    
+    void transition(Order order, OrderStatus previousStatus, OrderStatus newStatus) {
+        long cents = Math.round(order.totalAmount * 100);
+        if (countsAsRevenue(previousStatus)) {
+            revenueCents.add(-cents);
+        }
+        if (countsAsRevenue(newStatus)) {
+            revenueCents.add(cents);
+        }
+        if (countsAsSale(previousStatus)) {
+            salesCents.add(-cents);
+        }
+        if (countsAsSale(newStatus)) {
+            salesCents.add(cents);
+        }
+    }
+    
+    double revenue() {
+        return revenueCents.sum() / 100.0;
+    }
+    
+    double sales() {
+        return salesCents.sum() / 100.0;
+    }
+    
+    private static boolean countsAsRevenue(OrderStatus status) {
+        return status != null && status != OrderStatus.CANCELLED;
+    }
+    
+    private static boolean countsAsSale(OrderStatus status) {
+        return status == OrderStatus.DELIVERED || status == OrderStatus.SHIPPED;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Order;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Orders per user, kept sorted by order date (then id) so a user's history
+ * is read back in order without scanning or sorting.
+ */
+class UserOrderIndex {
+    
+    static final Comparator<Order> BY_DATE =
+            Comparator.comparing((Order order) -> order.orderDate).thenComparing(order -> order.id);
+    
+    private final Map<Long, NavigableSet<Order>> ordersByUser = new ConcurrentHashMap<>();
+    
+    void add(Order order) {
+        if (order.userId == null) {
+            return;
+        }
+        ordersByUser.compute(order.userId, (userId, userOrders) -> {
+            if (userOrders == null) {
+                userOrders = new ConcurrentSkipListSet<>(BY_DATE);
+            }
+            userOrders.add(order);
+            return userOrders;
+        });
+    }
+    
+    void remove(Order order) {
+        if (order.userId == null) {
+            return;
+        }
+        ordersByUser.computeIfPresent(order.userId, (userId, userOrders) -> {
+            userOrders.remove(order);
+            return userOrders.isEmpty() ? null : userOrders;
+        });
+    }
+    
+    List<Order> find(Long userId) {
+        NavigableSet<Order> userOrders = ordersByUser.get(userId);
+        return userOrders == null ? new ArrayList<>() : new ArrayList<>(userOrders);
+    }
+    
+    List<Order> find(Long userId, Date from, Date to) {
+        NavigableSet<Order> userOrders = ordersByUser.get(userId);
+        if (userOrders == null || (from != null && to != null && from.after(to))) {
+            return new ArrayList<>();
+        }
+        
+        NavigableSet<Order> range = userOrders;
+        if (from != null) {
+            range = range.tailSet(bound(from, Long.MIN_VALUE), true);
+        }
+        if (to != null) {
+            range = range.headSet(bound(to, Long.MAX_VALUE), true);
+        }
+        return new ArrayList<>(range);
+    }
+    
+    private static Order bound(Date date, long id) {
+        Order probe = new Order();
+        probe.orderDate = date;
+        probe.id = id;
+        return probe;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ecommerce.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalTest {
+    
+    private static final byte TYPE = 7;
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void tornTailIsTruncatedOnOpen() throws IOException {
+        Path file = dir.resolve("ecommerce.journal");
+        write(file, 0, 1, 2);
+        long intact = Files.size(file);
+        
+        ByteBuffer torn = ByteBuffer.allocate(18);
+        torn.putInt(100);
+        torn.putInt(0);
+        torn.put(TYPE);
+        torn.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(torn);
+        }
+        
+        Journal journal = Journal.open(file, FsyncPolicy.NEVER, 10);
+        assertEquals(intact, journal.getReplayEnd());
+        assertEquals(intact, Files.size(file));
+        assertEquals(Arrays.asList(0, 1, 2), replay(journal));
+        journal.append(TYPE, out -> out.writeInt(3));
+        journal.close();
+        
+        assertEquals(Arrays.asList(0, 1, 2, 3), reopenAndReplay(file));
+    }
+    
+    @Test
+    void frameWithBadChecksumEndsReplay() throws IOException {
+        Path file = dir.resolve("ecommerce.journal");
+        write(file, 0, 1, 2);
+        long size = Files.size(file);
+        
+        ByteBuffer flipped = ByteBuffer.allocate(1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.read(flipped, size - 1);
+            flipped.put(0, (byte) (flipped.get(0) ^ 0xFF));
+            flipped.rewind();
+            channel.write(flipped, size - 1);
+        }
+        
+        assertEquals(Arrays.asList(0, 1), reopenAndReplay(file));
+    }
+    
+    private static void write(Path file, int... values) throws IOException {
+        Journal journal = Journal.open(file, FsyncPolicy.NEVER, 10);
+        for (int value : values) {
+            journal.append(TYPE, out -> out.writeInt(value));
+        }
+        journal.close();
+    }
+    
+    private static List<Integer> reopenAndReplay(Path file) throws IOException {
+        Journal journal = Journal.open(file, FsyncPolicy.NEVER, 10);
+        try {
+            return replay(journal);
+        } finally {
+            journal.close();
+        }
+    }
+    
+    private static List<Integer> replay(Journal journal) {
+        List<Integer> values = new ArrayList<>();
+        journal.replay((type, payload) -> {
+            assertEquals(TYPE, type);
+            values.add(payload.readInt());
+        });
+        return values;
+    }
+}
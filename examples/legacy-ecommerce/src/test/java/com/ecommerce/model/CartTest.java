@@ -0,0 +1,86 @@
+package com.ecommerce.model;
+
+import com.ecommerce.pricing.PricingEngine;
+import com.ecommerce.pricing.PricingPlan;
+import com.ecommerce.pricing.PricingRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CartTest {
+    
+    private static final String[] CATEGORIES = {"Electronics", "Furniture", "Books"};
+    
+    @Test
+    void runningTotalMatchesPricingEveryLine() {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            Product product = new Product();
+            product.id = id;
+            product.price = 1 + random.nextInt(12_000) / 100.0;
+            product.category = CATEGORIES[(int) (id % CATEGORIES.length)];
+            products.add(product);
+        }
+        
+        Cart cart = new Cart(1L, 1L);
+        for (int i = 0; i < 2_000; i++) {
+            Product product = products.get(random.nextInt(products.size()));
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    cart.addItem(product, 1 + random.nextInt(4));
+                    break;
+                case 2:
+                    cart.updateQuantity(product.id, random.nextInt(9) - 1);
+                    break;
+                default:
+                    cart.removeItem(product.id);
+                    break;
+            }
+            assertEquals(pricedInOnePass(cart), cart.calculateTotal(), 1e-9);
+        }
+    }
+    
+    @Test
+    void runningTotalFollowsNewRules() {
+        PricingEngine engine = PricingEngine.getInstance();
+        List<PricingRule> original = engine.getRules();
+        try {
+            Product product = new Product();
+            product.id = 1L;
+            product.price = 80;
+            product.category = "Books";
+            Cart cart = new Cart(1L, 1L);
+            cart.addItem(product, 2);
+            double before = cart.calculateTotal();
+            
+            engine.load(Arrays.asList(PricingRule.parse("UNIT CATEGORY Books PERCENT_OFF 50")));
+            assertEquals(80.0, cart.calculateTotal(), 1e-9);
+            cart.addItem(product, 1);
+            assertEquals(120.0, cart.calculateTotal(), 1e-9);
+            
+            engine.load(original);
+            cart.removeItem(product.id);
+            cart.addItem(product, 2);
+            assertEquals(before, cart.calculateTotal(), 1e-9);
+        } finally {
+            engine.load(original);
+        }
+    }
+    
+    private static double pricedInOnePass(Cart cart) {
+        PricingPlan plan = PricingEngine.getInstance().getPlan();
+        long subtotal = 0;
+        for (Cart.CartItem line : cart.getItems()) {
+            long unitCents = plan.unitPrice(PricingPlan.toCents(line.price), line.product.category);
+            subtotal += plan.lineTotal(unitCents, line.quantity);
+        }
+        return plan.orderTotal(subtotal) / 100.0;
+    }
+}
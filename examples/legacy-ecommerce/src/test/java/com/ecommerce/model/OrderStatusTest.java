@@ -0,0 +1,95 @@
+package com.ecommerce.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderStatusTest {
+    
+    @Test
+    void orderGoesThroughItsLifecycle() {
+        Order order = new Order();
+        assertEquals(OrderStatus.PENDING, order.status);
+        
+        assertTrue(order.updateStatus(OrderStatus.CONFIRMED));
+        assertTrue(order.updateStatus(OrderStatus.PRIORITY));
+        assertNull(order.deliveryDate);
+        assertTrue(order.updateStatus(OrderStatus.SHIPPED));
+        assertNotNull(order.deliveryDate);
+        assertFalse(order.canBeCancelled());
+        assertTrue(order.updateStatus(OrderStatus.DELIVERED));
+        assertEquals(OrderStatus.DELIVERED, order.status);
+    }
+    
+    @Test
+    void refusedChangeLeavesStatusAlone() {
+        Order order = new Order();
+        order.updateStatus(OrderStatus.SHIPPED);
+        
+        assertFalse(order.updateStatus(OrderStatus.PENDING));
+        assertFalse(order.updateStatus(OrderStatus.CANCELLED));
+        assertEquals(OrderStatus.SHIPPED, order.status);
+        assertTrue(order.updateStatus(OrderStatus.SHIPPED));
+    }
+    
+    @ParameterizedTest
+    @EnumSource(value = OrderStatus.class, names = {"DELIVERED", "CANCELLED", "EXPIRED"})
+    void finalStatusesAllowNoFurtherChange(OrderStatus status) {
+        assertTrue(status.isFinal());
+        for (OrderStatus other : EnumSet.complementOf(EnumSet.of(status))) {
+            assertFalse(status.canBecome(other), status + " -> " + other);
+        }
+        Order order = new Order();
+        order.status = status;
+        assertFalse(order.canBeCancelled());
+    }
+    
+    @ParameterizedTest
+    @EnumSource(value = OrderStatus.class, names = {"PENDING", "PENDING_STOCK", "VIEWED", "PRIORITY", "CONFIRMED"})
+    void openStatusesCanBeCancelled(OrderStatus status) {
+        assertFalse(status.isFinal());
+        Order order = new Order();
+        order.status = status;
+        assertTrue(order.canBeCancelled());
+        assertTrue(order.updateStatus(OrderStatus.CANCELLED));
+    }
+    
+    @Test
+    void onlyPendingStockGoesBackToPending() {
+        for (OrderStatus status : OrderStatus.values()) {
+            boolean expected = status == OrderStatus.PENDING || status == OrderStatus.PENDING_STOCK;
+            assertEquals(expected, status.canBecome(OrderStatus.PENDING), status.name());
+        }
+    }
+    
+    @Test
+    void parseIgnoresCaseAndAcceptsLegacyCancel() {
+        assertEquals(OrderStatus.SHIPPED, OrderStatus.parse("shipped"));
+        assertEquals(OrderStatus.DELIVERED, OrderStatus.parse(" Delivered "));
+        assertEquals(OrderStatus.PENDING_STOCK, OrderStatus.parse("pending_stock"));
+        assertEquals(OrderStatus.CANCELLED, OrderStatus.parse("cancel"));
+        assertNull(OrderStatus.parse("LOST"));
+        assertNull(OrderStatus.parse(null));
+    }
+    
+    @Test
+    void parseDoesNotDependOnDefaultLocale() {
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(OrderStatus.PRIORITY, OrderStatus.parse("priority"));
+            assertEquals(OrderStatus.VIEWED, OrderStatus.parse("viewed"));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+}
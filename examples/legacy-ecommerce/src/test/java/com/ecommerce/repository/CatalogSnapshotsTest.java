@@ -0,0 +1,101 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.journal.FsyncPolicy;
+import com.ecommerce.journal.Journal;
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotsTest {
+    
+    @TempDir
+    Path dir;
+    
+    // the storage the build asked for, e.g. -Decommerce.catalog.storage=columnar
+    private static final String STORAGE = System.getProperty("ecommerce.catalog.storage");
+    
+    @AfterEach
+    void resetStorage() {
+        if (STORAGE == null) {
+            System.clearProperty("ecommerce.catalog.storage");
+        } else {
+            System.setProperty("ecommerce.catalog.storage", STORAGE);
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "columnar"})
+    void snapshotPlusJournalEqualsLiveCatalog(String storage) throws IOException {
+        System.setProperty("ecommerce.catalog.storage", storage);
+        Path journalFile = dir.resolve("ecommerce.journal");
+        Path snapshotFile = dir.resolve("catalog.snapshot");
+        Journal journal = Journal.open(journalFile, FsyncPolicy.ALWAYS, 10);
+        ProductRepository live = new ProductRepository(journal, null);
+        CatalogSnapshots snapshots = new CatalogSnapshots(snapshotFile, journal);
+        
+        live.reserve(Collections.singletonMap(1L, 3));
+        live.update(2L, product -> product.name = "Gaming mouse");
+        snapshots.write(live);
+        
+        live.save(new Product("Lamp", 49.99, 12));
+        live.delete(3L);
+        live.addStock(4L, 5);
+        snapshots.write(live);
+        
+        live.reserve(Collections.singletonMap(4L, 2));
+        live.update(5L, product -> product.setPrice(249.99));
+        live.save(new Product("Shelf", 89.99, 4));
+        journal.close();
+        
+        Journal reopened = Journal.open(journalFile, FsyncPolicy.ALWAYS, 10);
+        CatalogSnapshots loaded = new CatalogSnapshots(snapshotFile, reopened);
+        long position = loaded.load(product -> { });
+        assertTrue(position > 0 && position < reopened.getReplayEnd(), "replay starts after the snapshot");
+        ProductRepository restored = new ProductRepository(reopened, loaded);
+        assertNull(restored.findById(3L));
+        assertEquals(describe(live), describe(restored));
+        restored.close();
+        reopened.close();
+    }
+    
+    @Test
+    void snapshotWithoutJournalIsTakenAgainOnClose() throws IOException {
+        Path snapshotFile = dir.resolve("catalog.snapshot");
+        ProductRepository live = new ProductRepository(null, null);
+        live.reserve(Collections.singletonMap(1L, 3));
+        live.update(2L, product -> product.name = "Gaming mouse");
+        live.delete(3L);
+        new CatalogSnapshots(snapshotFile, null).write(live);
+        
+        ProductRepository restored = new ProductRepository(null, new CatalogSnapshots(snapshotFile, null));
+        assertEquals(describe(live), describe(restored));
+        
+        restored.addStock(1L, 4);
+        restored.close();
+        ProductRepository reloaded = new ProductRepository(null, new CatalogSnapshots(snapshotFile, null));
+        assertEquals(describe(restored), describe(reloaded));
+        reloaded.close();
+    }
+    
+    private static List<String> describe(ProductRepository repository) {
+        List<String> products = new ArrayList<>();
+        for (Product product : repository.iterateById(null)) {
+            products.add(product.id + " " + product.name + " " + product.price + " "
+                    + product.category + " " + product.getStock());
+        }
+        return products;
+    }
+}
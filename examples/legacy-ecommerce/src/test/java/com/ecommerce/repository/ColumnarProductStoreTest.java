@@ -0,0 +1,229 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarProductStoreTest {
+    
+    // mirrors RowIndex: 1024 slots before the first resize
+    private static final int SLOTS = 1024;
+    
+    @Test
+    void removeAndReputAcrossProbeWraparound() {
+        List<Long> ids = new ArrayList<>();
+        ids.addAll(idsWithHome(SLOTS - 2, 1));
+        ids.addAll(idsWithHome(SLOTS - 1, 4));
+        ids.addAll(idsWithHome(0, 2));
+        ColumnarProductStore store = new ColumnarProductStore();
+        for (Long id : ids) {
+            put(store, id, 10);
+        }
+        assertAllPresent(store, ids);
+        
+        List<Long> remaining = new ArrayList<>(ids);
+        for (Long id : new ArrayList<>(ids)) {
+            remove(store, id);
+            remaining.remove(id);
+            assertNull(store.get(id));
+            assertAllPresent(store, remaining);
+        }
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            put(store, ids.get(i), 10);
+            remaining.add(ids.get(i));
+            assertAllPresent(store, remaining);
+        }
+        
+        // removing from the middle of the run that wraps must keep its tail reachable
+        remove(store, ids.get(3));
+        remove(store, ids.get(1));
+        remaining.remove(ids.get(3));
+        remaining.remove(ids.get(1));
+        assertAllPresent(store, remaining);
+    }
+    
+    @Test
+    void randomPutsAndRemovesMatchAMap() {
+        ColumnarProductStore store = new ColumnarProductStore();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            long id = 1 + random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                remove(store, id);
+                expected.remove(id);
+            } else {
+                put(store, id, 1);
+                expected.put(id, "Product " + id);
+            }
+        }
+        for (long id = 1; id <= 3000; id++) {
+            Product product = store.get(id);
+            assertEquals(expected.get(id), product == null ? null : product.name, "id " + id);
+        }
+        assertEquals(expected.size(), store.values().size());
+        assertTrue(store.allocatedRows() <= 3000, "removed rows are reused");
+    }
+    
+    @Test
+    void growsPastOneChunk() {
+        ColumnarProductStore store = new ColumnarProductStore();
+        int count = 40_000;
+        for (long id = 1; id <= count; id++) {
+            put(store, id, (int) (id % 100));
+        }
+        for (long id = 1; id <= count; id++) {
+            Product product = store.get(id);
+            assertEquals("Product " + id, product.name);
+            assertEquals((int) (id % 100), product.getStock());
+        }
+        assertEquals(count, store.values().size());
+        
+        long last = count - 1;
+        assertTrue(store.tryTakeStock(last, 99, () -> { }));
+        assertEquals(0, store.get(last).getStock());
+        assertFalse(store.tryTakeStock(last, 1, () -> { }));
+    }
+    
+    @Test
+    void staleViewSharesStockAfterUpdate() {
+        ColumnarProductStore store = new ColumnarProductStore();
+        put(store, 1L, 10);
+        Product stale = store.get(1L);
+        
+        store.compute(1L, (id, current) -> {
+            Product copy = current.copy();
+            copy.name = "Renamed";
+            return copy;
+        });
+        assertTrue(stale.tryTakeStock(3));
+        
+        Product current = store.get(1L);
+        assertEquals("Renamed", current.name);
+        assertEquals(7, current.getStock());
+        assertEquals(7, stale.getStock());
+    }
+    
+    @Test
+    void reusedRowIsOutOfReachOfTheRemovedProductsViews() {
+        ColumnarProductStore store = new ColumnarProductStore();
+        put(store, 1L, 10);
+        Product removed = store.get(1L);
+        remove(store, 1L);
+        put(store, 2L, 5);
+        assertEquals(1, store.allocatedRows());
+        
+        assertEquals(0, removed.getStock());
+        assertFalse(removed.tryTakeStock(1));
+        assertTrue(removed.tryTakeStock(0));
+        removed.addStock(3);
+        removed.setStock(50);
+        assertEquals(5, store.get(2L).getStock());
+        
+        // a copy of the removed view saved again brings no stock of its own
+        store.compute(1L, (id, current) -> removed.copy());
+        assertEquals(0, store.get(1L).getStock());
+        assertEquals(5, store.get(2L).getStock());
+        
+        for (long id = 3; id < 10_000; id++) {
+            put(store, id, 1);
+            remove(store, id);
+        }
+        assertEquals(3, store.allocatedRows());
+    }
+    
+    @Test
+    void readsOverlappingWritesSeeWholeProducts() throws Exception {
+        ColumnarProductStore store = new ColumnarProductStore();
+        for (long id = 1; id <= 100; id++) {
+            put(store, id, 1);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger torn = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            await(start);
+            // grows both the index and the columns, then churns removed rows
+            for (long id = 1_000; id < 60_000; id++) {
+                put(store, id, 1);
+                if (id % 3 == 0) {
+                    remove(store, id - 1);
+                }
+            }
+            running.set(false);
+        }));
+        for (int t = 0; t < 3; t++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                Random random = new Random();
+                while (running.get()) {
+                    long id = 1 + random.nextInt(100);
+                    Product product = store.get(id);
+                    if (product == null || product.id != id || !("Product " + id).equals(product.name)) {
+                        torn.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(0, torn.get());
+    }
+    
+    private static List<Long> idsWithHome(int home, int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; ids.size() < count; id++) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & (SLOTS - 1)) == home) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+    
+    private static void put(ColumnarProductStore store, long id, int stock) {
+        Product product = new Product("Product " + id, 10.0, stock);
+        product.id = id;
+        product.category = "Category " + id % 7;
+        store.compute(id, (key, current) -> product);
+    }
+    
+    private static void remove(ColumnarProductStore store, long id) {
+        store.compute(id, (key, current) -> null);
+    }
+    
+    private static void assertAllPresent(ColumnarProductStore store, List<Long> ids) {
+        for (Long id : ids) {
+            Product product = store.get(id);
+            assertNotNull(product, "id " + id);
+            assertEquals(id, product.id);
+        }
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.journal.FsyncPolicy;
+import com.ecommerce.journal.Journal;
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductRepositoryJournalTest {
+    
+    @TempDir
+    Path dir;
+    
+    // the storage the build asked for, e.g. -Decommerce.catalog.storage=columnar
+    private static final String STORAGE = System.getProperty("ecommerce.catalog.storage");
+    
+    @AfterEach
+    void resetStorage() {
+        if (STORAGE == null) {
+            System.clearProperty("ecommerce.catalog.storage");
+        } else {
+            System.setProperty("ecommerce.catalog.storage", STORAGE);
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "columnar"})
+    void replayMatchesStockWhenSavesInterleaveWithReservations(String storage) throws Exception {
+        System.setProperty("ecommerce.catalog.storage", storage);
+        Path file = dir.resolve("ecommerce.journal");
+        Journal journal = Journal.open(file, FsyncPolicy.NEVER, 10);
+        ProductRepository live = new ProductRepository(journal, null);
+        Long productId = 1L;
+        live.addStock(productId, 100_000);
+        
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                while (running.get()) {
+                    live.reserve(Collections.singletonMap(productId, 1));
+                    live.addStock(productId, 1);
+                    live.reserve(Collections.singletonMap(productId, 1));
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            await(start);
+            for (int i = 0; running.get(); i++) {
+                String name = "Laptop " + i;
+                live.update(productId, product -> product.name = name);
+            }
+        }));
+        threads.forEach(Thread::start);
+        start.countDown();
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        journal.close();
+        
+        ProductRepository replayed = new ProductRepository(Journal.open(file, FsyncPolicy.NEVER, 10), null);
+        Product expected = live.findById(productId);
+        Product actual = replayed.findById(productId);
+        assertTrue(expected.getStock() < 100_010, "reservations ran");
+        assertEquals(expected.getStock(), actual.getStock());
+        assertEquals(expected.name, actual.name);
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ecommerce.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductRepositoryReservationTest {
+    
+    // the storage the build asked for, e.g. -Decommerce.catalog.storage=columnar
+    private static final String STORAGE = System.getProperty("ecommerce.catalog.storage");
+    
+    @AfterEach
+    void resetStorage() {
+        if (STORAGE == null) {
+            System.clearProperty("ecommerce.catalog.storage");
+        } else {
+            System.setProperty("ecommerce.catalog.storage", STORAGE);
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "columnar"})
+    void concurrentReservationsNeverOversell(String storage) throws Exception {
+        System.setProperty("ecommerce.catalog.storage", storage);
+        ProductRepository repository = new ProductRepository(null, null);
+        Long productId = 1L;
+        int stock = repository.findById(productId).getStock();
+        
+        AtomicInteger reserved = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 1000; i++) {
+                    if (repository.reserve(Collections.singletonMap(productId, 1)).isReserved()) {
+                        reserved.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(stock, reserved.get());
+        assertEquals(0, repository.findById(productId).getStock());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "columnar"})
+    void failedReservationReturnsEarlierLines(String storage) {
+        System.setProperty("ecommerce.catalog.storage", storage);
+        ProductRepository repository = new ProductRepository(null, null);
+        int laptops = repository.findById(1L).getStock();
+        int mice = repository.findById(2L).getStock();
+        
+        Map<Long, Integer> cart = new HashMap<>();
+        cart.put(1L, 1);
+        cart.put(2L, mice + 1);
+        StockReservation reservation = repository.reserve(cart);
+        
+        assertEquals(Long.valueOf(2L), reservation.getShortProductId());
+        assertEquals(laptops, repository.findById(1L).getStock());
+        assertEquals(mice, repository.findById(2L).getStock());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "columnar"})
+    void batchTakesCombinedDemandAndReleasesPerOrder(String storage) {
+        System.setProperty("ecommerce.catalog.storage", storage);
+        ProductRepository repository = new ProductRepository(null, null);
+        int laptops = repository.findById(1L).getStock();
+        int mice = repository.findById(2L).getStock();
+        
+        Map<Long, Integer> first = new HashMap<>();
+        first.put(1L, 2);
+        first.put(2L, 5);
+        Map<Long, Integer> second = Collections.singletonMap(1L, 3);
+        StockReservation[] reservations = repository.reserveAll(Arrays.asList(first, second));
+        
+        assertTrue(reservations[0].isReserved());
+        assertTrue(reservations[1].isReserved());
+        assertEquals(laptops - 5, repository.findById(1L).getStock());
+        assertEquals(mice - 5, repository.findById(2L).getStock());
+        
+        reservations[1].release();
+        assertEquals(laptops - 2, repository.findById(1L).getStock());
+        assertEquals(mice - 5, repository.findById(2L).getStock());
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "columnar"})
+    void batchFallsBackToOrderByOrderWhenCombinedDemandIsShort(String storage) {
+        System.setProperty("ecommerce.catalog.storage", storage);
+        ProductRepository repository = new ProductRepository(null, null);
+        int laptops = repository.findById(1L).getStock();
+        
+        List<Map<Long, Integer>> demands = Arrays.asList(
+                Collections.singletonMap(1L, laptops - 2),
+                Collections.singletonMap(1L, 3),
+                Collections.singletonMap(1L, 2));
+        StockReservation[] reservations = repository.reserveAll(demands);
+        
+        assertTrue(reservations[0].isReserved());
+        assertFalse(reservations[1].isReserved());
+        assertEquals(Long.valueOf(1L), reservations[1].getShortProductId());
+        assertTrue(reservations[2].isReserved());
+        assertEquals(0, repository.findById(1L).getStock());
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SearchIndexTest {
+    
+    @Test
+    void searchRanksNameHitsFirstAndNeedsEveryTerm() {
+        SearchIndex index = new SearchIndex();
+        index.update(product(1L, "Desk lamp", "Bright lamp for a desk"));
+        index.update(product(2L, "Office chair", "Sits well at any desk"));
+        index.update(product(3L, "Standing desk", "Adjustable"));
+        
+        assertEquals(Arrays.asList(1L, 3L, 2L), index.search("DESK", 10));
+        assertEquals(Arrays.asList(1L), index.search("desk lamp", 10));
+        assertEquals(Arrays.asList(), index.search("desk sofa", 10));
+        
+        index.update(product(1L, "Floor lamp", null));
+        index.remove(3L);
+        assertEquals(Arrays.asList(2L), index.search("desk", 10));
+    }
+    
+    @Test
+    void concurrentUpdatesAndRemovesKeepSharedTerms() throws Exception {
+        SearchIndex index = new SearchIndex();
+        int threads = 2;
+        AtomicInteger lost = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Long productId = (long) t + 1;
+            writers.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 100_000; i++) {
+                    // each id has a single writer, as the repository guarantees
+                    index.remove(productId);
+                    index.update(product(productId, "shared", null));
+                    if (!index.search("shared", threads).contains(productId)) {
+                        lost.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        
+        assertEquals(0, lost.get(), "updates missing from search");
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), new HashSet<>(index.search("shared", 10)));
+    }
+    
+    private static Product product(Long id, String name, String description) {
+        Product product = new Product(id, name, 10.0);
+        product.description = description;
+        return product;
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
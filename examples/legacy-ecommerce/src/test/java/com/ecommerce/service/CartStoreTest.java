@@ -0,0 +1,49 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CartStoreTest {
+    
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 64, 1000})
+    void cartJustCreatedSurvivesEvictionAtTheBound(int maxSize) {
+        CartStore store = new CartStore(maxSize, 60_000);
+        for (long id = 1; id <= 3L * maxSize; id++) {
+            store.put(new Cart(id, 1L));
+            assertNotNull(store.get(id), "cart " + id);
+            assertTrue(store.stats().get("size") <= maxSize);
+        }
+    }
+    
+    @Test
+    void evictionDropsTheCartsClosestToExpiring() {
+        CartStore store = new CartStore(128, 60_000);
+        for (long id = 1; id <= 128; id++) {
+            Cart cart = new Cart(id, 1L);
+            // the first half was last touched a minute ago and expires first
+            cart.createdAt = new Date(cart.createdAt.getTime() - (id <= 64 ? 59_000 : 0));
+            store.put(cart);
+        }
+        store.put(new Cart(129L, 1L));
+        
+        long evicted = store.stats().get("evicted");
+        assertEquals(129 - store.stats().get("size"), evicted);
+        assertTrue(evicted >= 2 && evicted <= 64, "evicted " + evicted);
+        for (long id = 1; id <= evicted; id++) {
+            assertNull(store.get(id), "cart " + id);
+        }
+        for (long id = 65; id <= 129; id++) {
+            assertNotNull(store.get(id), "cart " + id);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Cart;
+import com.ecommerce.model.CheckoutRequest;
+import com.ecommerce.model.CheckoutResult;
+import com.ecommerce.model.OrderStatus;
+import com.ecommerce.model.Product;
+import com.ecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckoutPipelineTest {
+    
+    // cart ids of their own, so nothing here meets the service's carts
+    private static final AtomicLong CART_IDS = new AtomicLong(9_000_000);
+    
+    private final ProductRepository repository = ProductRepository.getInstance();
+    
+    @Test
+    void concurrentSubmittersNeverOversellAHotProduct() throws Exception {
+        int stock = 50;
+        Product hot = repository.save(new Product("Hot item", 19.99, stock));
+        GatedCartStore carts = new GatedCartStore();
+        CheckoutPipeline pipeline = new CheckoutPipeline(OrderService.getInstance(), carts, repository, 64);
+        
+        int threads = 8;
+        int cartsPerThread = 50;
+        List<CompletableFuture<CheckoutResult>> futures = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Thread(() -> {
+                List<CompletableFuture<CheckoutResult>> submitted = new ArrayList<>();
+                await(start);
+                for (int i = 0; i < cartsPerThread; i++) {
+                    submitted.add(pipeline.submit(request(carts.cartWith(hot, 1))));
+                }
+                synchronized (futures) {
+                    futures.addAll(submitted);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        
+        assertEquals(threads * cartsPerThread, futures.size());
+        int reserved = 0;
+        for (CompletableFuture<CheckoutResult> future : futures) {
+            CheckoutResult result = future.get(10, TimeUnit.SECONDS);
+            assertTrue(result.isSuccess(), result.error);
+            if (result.order.status != OrderStatus.PENDING_STOCK) {
+                reserved++;
+            }
+        }
+        assertEquals(stock, reserved);
+        assertEquals(0, repository.findById(hot.id).getStock());
+    }
+    
+    @Test
+    void shortOrderInABatchFallsBackToPendingStock() throws Exception {
+        Product product = repository.save(new Product("Scarce item", 5.0, 10));
+        GatedCartStore carts = new GatedCartStore();
+        CheckoutPipeline pipeline = new CheckoutPipeline(OrderService.getInstance(), carts, repository, 64);
+        
+        // the three carts ask for 13 together, so their batch cannot be reserved in one go
+        CompletableFuture<CheckoutResult> gate = carts.holdValidation(pipeline);
+        CompletableFuture<CheckoutResult> first = pipeline.submit(request(carts.cartWith(product, 8)));
+        CompletableFuture<CheckoutResult> second = pipeline.submit(request(carts.cartWith(product, 3)));
+        CompletableFuture<CheckoutResult> third = pipeline.submit(request(carts.cartWith(product, 2)));
+        carts.release.countDown();
+        
+        assertTrue(gate.get(10, TimeUnit.SECONDS).isSuccess());
+        assertEquals(OrderStatus.PENDING, first.get(10, TimeUnit.SECONDS).order.status);
+        assertEquals(OrderStatus.PENDING_STOCK, second.get(10, TimeUnit.SECONDS).order.status);
+        assertEquals(OrderStatus.PENDING, third.get(10, TimeUnit.SECONDS).order.status);
+        assertEquals(0, repository.findById(product.id).getStock());
+    }
+    
+    @Test
+    void duplicateSubmitOfACartPlacesOneOrder() throws Exception {
+        Product product = repository.save(new Product("Single item", 5.0, 10));
+        GatedCartStore carts = new GatedCartStore();
+        CheckoutPipeline pipeline = new CheckoutPipeline(OrderService.getInstance(), carts, repository, 64);
+        Cart cart = carts.cartWith(product, 2);
+        
+        CompletableFuture<CheckoutResult> gate = carts.holdValidation(pipeline);
+        CompletableFuture<CheckoutResult> first = pipeline.submit(request(cart));
+        CompletableFuture<CheckoutResult> second = pipeline.submit(request(cart));
+        carts.release.countDown();
+        
+        assertTrue(gate.get(10, TimeUnit.SECONDS).isSuccess());
+        CheckoutResult placed = first.get(10, TimeUnit.SECONDS);
+        CheckoutResult rejected = second.get(10, TimeUnit.SECONDS);
+        assertNotNull(placed.order);
+        assertNull(rejected.order);
+        assertEquals("Cart already being checked out", rejected.error);
+        assertEquals(8, repository.findById(product.id).getStock());
+    }
+    
+    @Test
+    void idlePipelineWakesForLateWork() throws Exception {
+        Product product = repository.save(new Product("Late item", 5.0, 10));
+        GatedCartStore carts = new GatedCartStore();
+        CheckoutPipeline pipeline = new CheckoutPipeline(OrderService.getInstance(), carts, repository, 4);
+        
+        // long enough for every stage to give up spinning and park
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(50);
+            CheckoutResult result = pipeline.submit(request(carts.cartWith(product, 1))).get(10, TimeUnit.SECONDS);
+            assertTrue(result.isSuccess(), result.error);
+        }
+        assertEquals(7, repository.findById(product.id).getStock());
+    }
+    
+    private static CheckoutRequest request(Cart cart) {
+        return new CheckoutRequest(cart.userId, cart.id, "1 Main St");
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Holds the validate stage on one cart, so whatever is submitted
+     * meanwhile reaches the later stages as a single batch.
+     */
+    private class GatedCartStore extends CartStore {
+        
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private Long gateId;
+        
+        GatedCartStore() {
+            super(10_000, 60_000);
+        }
+        
+        Cart cartWith(Product product, int quantity) {
+            Cart cart = new Cart(CART_IDS.getAndIncrement(), 1L);
+            cart.addItem(product, quantity);
+            put(cart);
+            return cart;
+        }
+        
+        CompletableFuture<CheckoutResult> holdValidation(CheckoutPipeline pipeline) {
+            Cart gate = cartWith(repository.save(new Product("Gate item", 1.0, 1)), 1);
+            gateId = gate.id;
+            CompletableFuture<CheckoutResult> future = pipeline.submit(request(gate));
+            CheckoutPipelineTest.await(entered);
+            return future;
+        }
+        
+        @Override
+        Cart get(Long cartId) {
+            if (cartId.equals(gateId)) {
+                entered.countDown();
+                CheckoutPipelineTest.await(release);
+            }
+            return super.get(cartId);
+        }
+    }
+}
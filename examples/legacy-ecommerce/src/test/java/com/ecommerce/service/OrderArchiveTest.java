@@ -0,0 +1,172 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Order;
+import com.ecommerce.model.OrderStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderArchiveTest {
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void archivedOrdersReadBackAfterReopening() throws IOException {
+        Path file = dir.resolve("orders.archive");
+        Map<Long, Order> orders = new LinkedHashMap<>();
+        OrderArchive archive = new OrderArchive(file, 7, 0, 3);
+        appendBatches(archive, orders);
+        
+        assertMatches(orders, archive);
+        assertMatches(orders, new OrderArchive(file, 7, 0, 3));
+    }
+    
+    @Test
+    void blockCutShortIsTruncatedOnOpen() throws IOException {
+        Path file = dir.resolve("orders.archive");
+        Map<Long, Order> orders = new LinkedHashMap<>();
+        appendBatches(new OrderArchive(file, 7, 0, 3), orders);
+        long intact = Files.size(file);
+        
+        ByteBuffer torn = ByteBuffer.allocate(10);
+        torn.putInt(0x454F4131);
+        torn.putInt(5);
+        torn.put((byte) 1);
+        torn.put((byte) 2);
+        torn.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(torn);
+        }
+        
+        OrderArchive reopened = new OrderArchive(file, 7, 0, 3);
+        assertEquals(intact, Files.size(file));
+        assertMatches(orders, reopened);
+        
+        Order next = order(reopened.maxId() + 1, 3L, 500_000);
+        orders.put(next.id, next);
+        reopened.append(List.of(next));
+        assertMatches(orders, new OrderArchive(file, 7, 0, 3));
+    }
+    
+    @Test
+    void failedAppendLeavesNoBlocksBehind() throws IOException {
+        Path file = dir.resolve("orders.archive");
+        Map<Long, Order> orders = new LinkedHashMap<>();
+        OrderArchive archive = new OrderArchive(file, 3, 0, 3);
+        appendBatches(archive, orders);
+        long before = Files.size(file);
+        
+        // the first block of three is written before the last order fails to serialize
+        List<Order> batch = new ArrayList<>();
+        long next = archive.maxId() + 1;
+        for (int i = 0; i < 5; i++) {
+            batch.add(order(next + i, 4L, 600_000 + i));
+        }
+        Order broken = batch.get(4);
+        broken.items = null;
+        assertThrows(NullPointerException.class, () -> archive.append(batch));
+        assertEquals(before, Files.size(file));
+        assertMatches(orders, archive);
+        
+        broken.items = order(broken.id, 4L, 0).items;
+        archive.append(batch);
+        batch.forEach(order -> orders.put(order.id, order));
+        assertMatches(orders, archive);
+        assertMatches(orders, new OrderArchive(file, 3, 0, 3));
+    }
+    
+    private static void appendBatches(OrderArchive archive, Map<Long, Order> orders) throws IOException {
+        Random random = new Random(1);
+        long id = 1;
+        for (int batch = 0; batch < 20; batch++) {
+            List<Order> candidates = new ArrayList<>();
+            int count = random.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                Long userId = random.nextInt(5) == 0 ? null : (long) random.nextInt(10);
+                Order order = order(id++, userId, random.nextInt(1_000_000));
+                candidates.add(order);
+                orders.put(order.id, order);
+            }
+            if (batch % 3 == 0 && !candidates.isEmpty()) {
+                // already archived orders are skipped
+                candidates.add(candidates.get(0));
+            }
+            archive.append(candidates);
+        }
+    }
+    
+    private static Order order(long id, Long userId, long orderDate) {
+        Order order = new Order();
+        order.id = id;
+        order.userId = userId;
+        order.orderDate = new Date(orderDate);
+        order.status = OrderStatus.DELIVERED;
+        order.shippingAddress = "addr " + id;
+        Order.OrderItem item = new Order.OrderItem();
+        item.productId = id % 5 + 1;
+        item.productName = "product " + item.productId;
+        item.quantity = (int) (id % 3) + 1;
+        item.price = 9.99;
+        order.items = new ArrayList<>(List.of(item));
+        return order;
+    }
+    
+    private static void assertMatches(Map<Long, Order> orders, OrderArchive archive) throws IOException {
+        assertEquals(orders.size(), archive.size());
+        for (Order expected : orders.values()) {
+            assertTrue(archive.contains(expected.id));
+            Order actual = archive.find(expected.id);
+            assertNotNull(actual, "order " + expected.id);
+            assertEquals(expected.userId, actual.userId);
+            assertEquals(expected.orderDate, actual.orderDate);
+            assertEquals(expected.status, actual.status);
+            assertEquals(expected.shippingAddress, actual.shippingAddress);
+            Order.OrderItem item = (Order.OrderItem) actual.items.get(0);
+            assertEquals(((Order.OrderItem) expected.items.get(0)).quantity, item.quantity);
+        }
+        long unknown = archive.maxId() + 1;
+        assertFalse(archive.contains(unknown));
+        assertNull(archive.find(unknown));
+        
+        Date from = new Date(200_000);
+        Date to = new Date(700_000);
+        for (long userId = 0; userId < 10; userId++) {
+            Long user = userId;
+            List<Order> history = orders.values().stream()
+                    .filter(order -> user.equals(order.userId))
+                    .sorted(UserOrderIndex.BY_DATE)
+                    .collect(Collectors.toList());
+            List<Long> inRange = history.stream()
+                    .filter(order -> !order.orderDate.before(from) && !order.orderDate.after(to))
+                    .map(order -> order.id)
+                    .collect(Collectors.toList());
+            assertEquals(ids(history), ids(archive.findByUser(user, null, null)));
+            assertEquals(inRange, ids(archive.findByUser(user, from, to)));
+        }
+    }
+    
+    private static List<Long> ids(List<Order> orders) {
+        return orders.stream().map(order -> order.id).collect(Collectors.toList());
+    }
+}
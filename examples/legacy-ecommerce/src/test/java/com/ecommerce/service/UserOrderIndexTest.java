@@ -0,0 +1,64 @@
+package com.ecommerce.service;
+
+import com.ecommerce.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserOrderIndexTest {
+    
+    @Test
+    void findReturnsAUsersOrdersByDateWithinInclusiveBounds() {
+        UserOrderIndex index = new UserOrderIndex();
+        index.add(order(3L, 7L, 300));
+        index.add(order(1L, 7L, 100));
+        index.add(order(2L, 7L, 200));
+        index.add(order(4L, 7L, 200));
+        index.add(order(5L, 8L, 200));
+        index.add(order(6L, null, 200));
+        
+        assertEquals(Arrays.asList(1L, 2L, 4L, 3L), ids(index.find(7L)));
+        assertEquals(Arrays.asList(2L, 4L, 3L), ids(index.find(7L, new Date(200), null)));
+        assertEquals(Arrays.asList(1L, 2L, 4L), ids(index.find(7L, null, new Date(200))));
+        assertEquals(Arrays.asList(2L, 4L), ids(index.find(7L, new Date(200), new Date(200))));
+        assertTrue(index.find(9L, new Date(0), new Date(1000)).isEmpty());
+    }
+    
+    @Test
+    void findIsEmptyWhenFromIsAfterTo() {
+        UserOrderIndex index = new UserOrderIndex();
+        index.add(order(1L, 7L, 100));
+        index.add(order(2L, 7L, 200));
+        
+        assertTrue(index.find(7L, new Date(200), new Date(100)).isEmpty());
+    }
+    
+    @Test
+    void removedOrdersLeaveTheHistory() {
+        UserOrderIndex index = new UserOrderIndex();
+        Order first = order(1L, 7L, 100);
+        index.add(first);
+        index.add(order(2L, 7L, 200));
+        
+        index.remove(first);
+        assertEquals(Arrays.asList(2L), ids(index.find(7L)));
+    }
+    
+    private static Order order(Long id, Long userId, long orderDate) {
+        Order order = new Order();
+        order.id = id;
+        order.userId = userId;
+        order.orderDate = new Date(orderDate);
+        return order;
+    }
+    
+    private static List<Long> ids(List<Order> orders) {
+        return orders.stream().map(order -> order.id).collect(Collectors.toList());
+    }
+}